@@ -0,0 +1,70 @@
+package battlecode.client.bench;
+
+import java.io.IOException;
+
+import battlecode.client.ClientProxy;
+import battlecode.client.Main;
+import battlecode.client.viewer.BufferedMatch;
+import battlecode.client.viewer.MatchListener;
+
+/**
+ * Loads the sample match used by the benchmarks. The match file is taken
+ * from the bc.bench.match system property, which the bench target of the
+ * Ant build sets.
+ */
+final class MatchFixture {
+
+	public static final String MATCH_PROPERTY = "bc.bench.match";
+
+	/** How long loadMatch waits for the whole match, in milliseconds. */
+	public static final long LOAD_TIMEOUT = 120000;
+
+	private MatchFixture() {}
+
+	public static String getMatchPath() {
+		String path = System.getProperty(MATCH_PROPERTY);
+		if (path == null) {
+			throw new IllegalStateException(MATCH_PROPERTY + " is not set");
+		}
+		return path;
+	}
+
+	public static ClientProxy openMatch() throws IOException {
+		return Main.openMatchFile(getMatchPath());
+	}
+
+	/**
+	 * Reads the first match of the sample file completely.
+	 *
+	 * @throws IOException if the file ends before the match footer, or the
+	 * match isn't read within LOAD_TIMEOUT
+	 */
+	public static BufferedMatch loadMatch() throws IOException, InterruptedException {
+		final Object signal = new Object();
+		BufferedMatch match = new BufferedMatch(openMatch());
+		match.addMatchListener(new MatchListener() {
+			public void roundsReceived(BufferedMatch m) { wake(); }
+			public void footerReceived(BufferedMatch m) { wake(); }
+
+			private void wake() {
+				synchronized (signal) {
+					signal.notifyAll();
+				}
+			}
+		});
+		long deadline = System.currentTimeMillis() + LOAD_TIMEOUT;
+		synchronized (signal) {
+			while (!match.isFinished()) {
+				if (match.isEnded()) {
+					throw new IOException(getMatchPath() + " ends before the match footer");
+				}
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					throw new IOException("Timed out reading " + getMatchPath());
+				}
+				signal.wait(left);
+			}
+		}
+		return match;
+	}
+}
@@ -0,0 +1,179 @@
+package battlecode.client.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import battlecode.client.ClientProxy;
+import battlecode.client.viewer.BufferedMatch;
+import battlecode.client.viewer.DebugState;
+import battlecode.client.viewer.GameStateTimeline;
+import battlecode.client.viewer.ReplayState;
+import battlecode.client.viewer.render.DrawState;
+import battlecode.serial.RoundDelta;
+import battlecode.world.GameMap;
+
+/**
+ * JMH benchmarks for the replay pipeline, from reading the match stream to
+ * drawing a frame. Run them with "ant bench".
+ *
+ * Everything except the draw benchmark works on a ReplayState, which has the
+ * same signal handling and copying code as the renderers' states but needs no
+ * display. The draw benchmark needs a graphics environment for the sprites.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Match {
+
+		public BufferedMatch match;
+		public GameMap map;
+		public int rounds;
+
+		@Setup(Level.Trial)
+		public void load() throws Exception {
+			match = MatchFixture.loadMatch();
+			map = (GameMap) match.getHeader().getMap();
+			rounds = match.getRoundsAvailable();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class States {
+
+		public ReplayState middle;
+		public ReplayState target;
+		public RoundDelta[] deltas;
+
+		@Setup(Level.Trial)
+		public void build(Match m) {
+			deltas = new RoundDelta[m.rounds];
+			middle = ReplayState.FACTORY.createState(m.map);
+			for (int i = 0; i < m.rounds; i++) {
+				deltas[i] = m.match.getRound(i);
+				if (i < m.rounds / 2) {
+					middle.apply(deltas[i]);
+				}
+			}
+			target = new ReplayState();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Timeline {
+
+		public GameStateTimeline<ReplayState> timeline;
+		public int rounds;
+
+		@Setup(Level.Trial)
+		public void build(Match m) {
+			// states prepared in the background would make the steps
+			// measure the seek worker instead of setRound
+			timeline = new GameStateTimeline<ReplayState>(m.match, ReplayState.FACTORY, 10, false);
+			timeline.setTargetState(new ReplayState());
+			timeline.awaitRound(Integer.MAX_VALUE);
+			rounds = timeline.getNumRounds();
+		}
+
+		@TearDown(Level.Trial)
+		public void terminate() {
+			timeline.terminate();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Frame {
+
+		public DrawState state;
+		public DebugState debug;
+		public BufferedImage image;
+		public Graphics2D g2;
+
+		@Setup(Level.Trial)
+		public void build(Match m) {
+			state = DrawState.FACTORY.createState(m.map);
+			for (int i = 0; i < m.rounds / 2; i++) {
+				state.apply(m.match.getRound(i));
+			}
+			debug = new DebugState(null, null);
+			image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_ARGB);
+			g2 = image.createGraphics();
+			g2.scale(800.0 / m.map.getWidth(), 800.0 / m.map.getHeight());
+			g2.translate(-m.map.getMapOrigin().x, -m.map.getMapOrigin().y);
+		}
+
+		@TearDown(Level.Trial)
+		public void dispose() {
+			g2.dispose();
+		}
+	}
+
+	/** Reads every object of the sample match file. */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int readObjects(Blackhole bh) throws Exception {
+		ClientProxy proxy = MatchFixture.openMatch();
+		int count = 0;
+		try {
+			while (true) {
+				bh.consume(proxy.readObject());
+				count++;
+			}
+		}
+		catch (EOFException e) {
+			return count;
+		}
+	}
+
+	/** Applies every round of the match to a fresh state. */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ReplayState applyMatch(Match m, States s) {
+		ReplayState state = ReplayState.FACTORY.createState(m.map);
+		for (RoundDelta delta : s.deltas) {
+			state.apply(delta);
+		}
+		return state;
+	}
+
+	/** Copies the state of the middle of the match, as a keyframe seek does. */
+	@Benchmark
+	public ReplayState copyState(States s) {
+		ReplayState.FACTORY.copyState(s.middle, s.target);
+		return s.target;
+	}
+
+	/** Steps one round forward through the timeline, wrapping at the end. */
+	@Benchmark
+	public int seekForward(Timeline t) {
+		int round = t.timeline.getRound() + 1;
+		t.timeline.setRound(round > t.rounds ? 0 : round);
+		return t.timeline.getRound();
+	}
+
+	/** Steps one round backward through the timeline, wrapping at the start. */
+	@Benchmark
+	public int seekBackward(Timeline t) {
+		int round = t.timeline.getRound() - 1;
+		t.timeline.setRound(round < 0 ? t.rounds : round);
+		return t.timeline.getRound();
+	}
+
+	/** Draws the middle of the match into an offscreen image. */
+	@Benchmark
+	public BufferedImage draw(Frame f) {
+		f.state.draw(f.g2, f.debug);
+		return f.image;
+	}
+}
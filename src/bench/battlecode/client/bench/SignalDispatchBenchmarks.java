@@ -0,0 +1,160 @@
+package battlecode.client.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import battlecode.client.viewer.BufferedMatch;
+import battlecode.client.viewer.ReplayState;
+import battlecode.common.Direction;
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.world.GameMap;
+import battlecode.world.signal.*;
+
+/**
+ * JMH benchmarks for applying a round of signals to a state in steady
+ * state, through AbstractDrawState's switch dispatch and through
+ * Signal.accept.
+ *
+ * The round is made of the signals of the rounds before the middle of the
+ * match that can be applied again and again without changing which robots
+ * exist: energon, bytecodes, indicator strings, attacks and so on, plus a
+ * robot moving to the next square and back. Spawns and deaths are left
+ * out, since a spawned robot is a new object by design.
+ *
+ * Applying the round through the switch dispatch must not allocate. At the
+ * end of each trial Steady.checkAllocations replays it on the benchmark
+ * thread and fails the benchmark if it allocated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SignalDispatchBenchmarks {
+
+	/** The signal classes whose visitors only update existing robots. */
+	private static final Set<Class<?>> repeatable = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+		AttackSignal.class, BroadcastSignal.class, BytecodesUsedSignal.class,
+		ControlBitsSignal.class, EnergonChangeSignal.class, FluxChangeSignal.class,
+		IndicatorStringSignal.class, ResearchChangeSignal.class,
+		SetDirectionSignal.class, ShieldChangeSignal.class));
+
+	/** The number of rounds before the middle to take signals from. */
+	private static final int ROUNDS = 20;
+
+	/** The number of rounds checkAllocations applies. */
+	private static final int CHECKED_ROUNDS = 10000;
+
+	@State(Scope.Thread)
+	public static class Steady {
+
+		public ReplayState state;
+		public Signal[] signals;
+		public RoundDelta round;
+		public RoundDelta empty;
+
+		@Setup(Level.Trial)
+		public void build() throws Exception {
+			BufferedMatch match = MatchFixture.loadMatch();
+			GameMap map = (GameMap) match.getHeader().getMap();
+			int middle = match.getRoundsAvailable() / 2;
+			state = ReplayState.FACTORY.createState(map);
+			for (int i = 0; i < middle; i++) {
+				state.apply(match.getRound(i));
+			}
+
+			// keep the signals that apply cleanly to the middle state
+			ReplayState scratch = ReplayState.FACTORY.cloneState(state);
+			List<Signal> kept = new ArrayList<Signal>();
+			for (int i = Math.max(0, middle - ROUNDS); i < middle; i++) {
+				for (Signal s : match.getRound(i).getSignals()) {
+					if (!repeatable.contains(s.getClass())) {
+						continue;
+					}
+					try {
+						scratch.apply(s);
+						kept.add(s);
+					} catch (Throwable t) {
+						// refers to a robot that is gone by the middle
+					}
+				}
+			}
+
+			// a robot moving to the next square and back, so that the round
+			// still leaves it where it was
+			MapLocation origin = map.getMapOrigin();
+			List<ReplayState.Robot> robots = state.getRobotsIn(origin.x, origin.y,
+				origin.x + map.getWidth(), origin.y + map.getHeight());
+			if (!robots.isEmpty()) {
+				ReplayState.Robot robot = robots.get(0);
+				MapLocation from = robot.getLocation();
+				MapLocation to = from.add(Direction.NORTH);
+				kept.add(new MovementSignal(robot.getID(), to, true, 2));
+				kept.add(new MovementSignal(robot.getID(), from, false, 2));
+			}
+
+			signals = kept.toArray(new Signal[kept.size()]);
+			round = new RoundDelta(signals);
+			empty = new RoundDelta(new Signal[0]);
+		}
+
+		/**
+		 * Fails the trial if applying the round through the switch
+		 * dispatch allocated anything, measured with the HotSpot extension
+		 * of ThreadMXBean as AllocationCounter does. Less than a byte per
+		 * round in total is the measurement's own noise.
+		 */
+		@TearDown(Level.Trial)
+		public void checkAllocations() {
+			if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+				System.err.println("Allocation check skipped: not supported by this VM");
+				return;
+			}
+			com.sun.management.ThreadMXBean bean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!bean.isThreadAllocatedMemorySupported()) {
+				System.err.println("Allocation check skipped: not supported by this VM");
+				return;
+			}
+			bean.setThreadAllocatedMemoryEnabled(true);
+			long thread = Thread.currentThread().getId();
+			long start = bean.getThreadAllocatedBytes(thread);
+			long overhead = bean.getThreadAllocatedBytes(thread) - start;
+			start = bean.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < CHECKED_ROUNDS; i++) {
+				state.apply(round);
+			}
+			long bytes = bean.getThreadAllocatedBytes(thread) - start - overhead;
+			if (bytes >= CHECKED_ROUNDS) {
+				throw new IllegalStateException("Applying a round allocated "
+					+ (bytes / CHECKED_ROUNDS) + " bytes");
+			}
+		}
+	}
+
+	/** Applies the round through the switch dispatch. */
+	@Benchmark
+	public ReplayState dispatchRound(Steady s) {
+		s.state.apply(s.round);
+		return s.state;
+	}
+
+	/** Applies the round through Signal.accept, as GameState does. */
+	@Benchmark
+	public ReplayState acceptRound(Steady s) {
+		for (Signal signal : s.signals) {
+			signal.accept(s.state);
+		}
+		s.state.apply(s.empty);
+		return s.state;
+	}
+}
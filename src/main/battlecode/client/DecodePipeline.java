@@ -0,0 +1,308 @@
+package battlecode.client;
+
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a match stream on two threads, so that reading a saved match is
+ * not limited by a single thread doing both inflation and deserialization.
+ *
+ * The inflate stage reads the raw (optionally gzipped) stream into a ring
+ * of fixed-size buffers. The decode stage deserializes objects from those
+ * buffers and queues them ahead of the consumer, which takes them with
+ * readObject. Each stage counts the bytes or objects it has handled and the
+ * time it has spent working rather than waiting on the other stages.
+ */
+public final class DecodePipeline {
+
+	/** The size of a single buffer of the inflate ring. */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The number of buffers in the inflate ring. */
+	public static final int RING_SIZE = 16;
+
+	/** The number of decoded objects to queue ahead of the consumer. */
+	public static final int DECODE_AHEAD = 256;
+
+	private static final class Buffer {
+		final byte[] data = new byte[BUFFER_SIZE];
+		int length;
+	}
+
+	/** Marks the end of the inflated stream. */
+	private static final Buffer END_OF_DATA = new Buffer();
+
+	/** Marks the end of the decoded objects. */
+	private static final Object END_OF_STREAM = new Object();
+
+	/** Carries a failure of either stage to the consumer. */
+	private static final class Failure {
+		final Throwable cause;
+		Failure(Throwable cause) { this.cause = cause; }
+	}
+
+	private final BlockingQueue<Buffer> free = new ArrayBlockingQueue<Buffer>(RING_SIZE);
+	private final BlockingQueue<Buffer> filled = new ArrayBlockingQueue<Buffer>(RING_SIZE + 1);
+	private final BlockingQueue<Object> decoded = new ArrayBlockingQueue<Object>(DECODE_AHEAD);
+
+	private final InputStream raw;
+	private final boolean gzipped;
+	private final boolean xml;
+
+	private final Thread inflater;
+	private final Thread decoder;
+
+	private volatile Throwable inflateError = null;
+	private volatile boolean closed = false;
+
+	/** The last object taken, once it is END_OF_STREAM or a Failure. */
+	private Object terminal = null;
+
+	private final AtomicLong bytesInflated = new AtomicLong();
+	private final AtomicLong inflateNanos = new AtomicLong();
+	private final AtomicLong objectsDecoded = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Starts reading the given stream.
+	 *
+	 * @param raw the stream to read
+	 * @param gzipped whether the stream has to be inflated
+	 * @param xml whether the objects are serialized with XStream; otherwise
+	 * both Java serialization and the SignalCodec encoding are recognized
+	 */
+	public DecodePipeline(InputStream raw, boolean gzipped, boolean xml) {
+		this.raw = raw;
+		this.gzipped = gzipped;
+		this.xml = xml;
+		for (int i = 0; i < RING_SIZE; i++) {
+			free.add(new Buffer());
+		}
+		inflater = new Thread("match inflater") {
+			public void run() { runInflater(); }
+		};
+		decoder = new Thread("match decoder") {
+			public void run() { runDecoder(); }
+		};
+		inflater.setDaemon(true);
+		decoder.setDaemon(true);
+		inflater.start();
+		decoder.start();
+	}
+
+	private void runInflater() {
+		try {
+			InputStream in = (gzipped ? new GZIPInputStream(raw, BUFFER_SIZE) : raw);
+			try {
+				while (true) {
+					Buffer buf = free.take();
+					long start = System.nanoTime();
+					int n = 0;
+					int r = 0;
+					while (n < BUFFER_SIZE && (r = in.read(buf.data, n, BUFFER_SIZE - n)) >= 0) {
+						n += r;
+					}
+					inflateNanos.addAndGet(System.nanoTime() - start);
+					bytesInflated.addAndGet(n);
+					if (n > 0) {
+						buf.length = n;
+						filled.put(buf);
+					}
+					else {
+						free.put(buf);
+					}
+					if (r < 0) {
+						break;
+					}
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (InterruptedException e) {
+			return;
+		}
+		catch (Throwable t) {
+			// an Error too, or the decoder would wait for data forever
+			if (!closed) {
+				inflateError = t;
+			}
+		}
+		try {
+			filled.put(END_OF_DATA);
+		}
+		catch (InterruptedException e) {}
+	}
+
+	private void runDecoder() {
+		Object last;
+		try {
+			ObjectInput ois = StreamClientProxy.openObjectStream(new RingInputStream(), xml);
+			while (true) {
+				long start = System.nanoTime();
+				Object o = ois.readObject();
+				decodeNanos.addAndGet(System.nanoTime() - start);
+				objectsDecoded.incrementAndGet();
+				decoded.put(o);
+			}
+		}
+		catch (EOFException e) {
+			last = (inflateError != null ? new Failure(inflateError) : END_OF_STREAM);
+		}
+		catch (InterruptedIOException e) {
+			return;
+		}
+		catch (InterruptedException e) {
+			return;
+		}
+		catch (Throwable t) {
+			// an Error too (out of memory on a large round, a mismatched
+			// server jar), or the consumer would wait forever
+			last = new Failure(inflateError != null ? inflateError : t);
+		}
+		try {
+			decoded.put(last);
+		}
+		catch (InterruptedException e) {}
+	}
+
+	/**
+	 * Reads the inflated bytes from the ring, handing each buffer back to
+	 * the inflater once it has been consumed.
+	 */
+	private final class RingInputStream extends InputStream {
+
+		private Buffer current = null;
+		private int pos = 0;
+
+		/**
+		 * @return false at the end of the data
+		 */
+		private boolean fill() throws IOException {
+			if (current == END_OF_DATA) {
+				return false;
+			}
+			if (current != null && pos < current.length) {
+				return true;
+			}
+			try {
+				if (current != null) {
+					free.put(current);
+				}
+				current = filled.take();
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			pos = 0;
+			return current != END_OF_DATA;
+		}
+
+		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			return current.data[pos++] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			len = Math.min(len, current.length - pos);
+			System.arraycopy(current.data, pos, b, off, len);
+			pos += len;
+			return len;
+		}
+
+		public int available() {
+			return (current == null || current == END_OF_DATA ? 0 : current.length - pos);
+		}
+	}
+
+	/**
+	 * Takes the next decoded object, waiting for the decoder if necessary.
+	 *
+	 * @throws EOFException at the end of the stream
+	 */
+	public Object readObject() throws EOFException {
+		if (terminal == null) {
+			Object o;
+			try {
+				o = decoded.take();
+			}
+			catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted while reading match");
+			}
+			if (o != END_OF_STREAM && !(o instanceof Failure)) {
+				return o;
+			}
+			terminal = o;
+		}
+		if (terminal == END_OF_STREAM) {
+			throw new EOFException();
+		}
+		((Failure) terminal).cause.printStackTrace();
+		throw new RuntimeException("Deserialization failed");
+	}
+
+	/**
+	 * Stops both stages and closes the underlying stream.
+	 */
+	public void close() {
+		closed = true;
+		inflater.interrupt();
+		decoder.interrupt();
+		try {
+			raw.close();
+		}
+		catch (IOException e) {}
+	}
+
+	/** @return the number of bytes the inflate stage has produced */
+	public long getBytesInflated() {
+		return bytesInflated.get();
+	}
+
+	/** @return the number of objects the decode stage has produced */
+	public long getObjectsDecoded() {
+		return objectsDecoded.get();
+	}
+
+	/** @return the number of decoded objects waiting for the consumer */
+	public int getDecodedAhead() {
+		return decoded.size();
+	}
+
+	/** @return inflated bytes per second of inflate stage work */
+	public double getInflateThroughput() {
+		long nanos = inflateNanos.get();
+		return (nanos == 0 ? 0 : bytesInflated.get() * 1e9 / nanos);
+	}
+
+	/** @return decoded objects per second of decode stage work */
+	public double getDecodeThroughput() {
+		long nanos = decodeNanos.get();
+		return (nanos == 0 ? 0 : objectsDecoded.get() * 1e9 / nanos);
+	}
+
+	/** @return decoded objects per second since the pipeline was started */
+	public double getOverallThroughput() {
+		long nanos = System.nanoTime() - startTime;
+		return (nanos == 0 ? 0 : objectsDecoded.get() * 1e9 / nanos);
+	}
+
+	public String toString() {
+		return String.format("inflate %.1f MB/s, decode %.0f objects/s, overall %.0f objects/s",
+		                     getInflateThroughput() / (1 << 20), getDecodeThroughput(),
+		                     getOverallThroughput());
+	}
+}
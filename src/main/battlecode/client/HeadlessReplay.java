@@ -0,0 +1,201 @@
+package battlecode.client;
+
+import java.io.IOException;
+
+import battlecode.client.viewer.BufferedMatch;
+import battlecode.client.viewer.GameStateTimeline;
+import battlecode.client.viewer.MatchListener;
+import battlecode.client.viewer.ReplayState;
+import battlecode.client.viewer.RoundStore;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+
+/**
+ * Plays saved matches as fast as possible without any Swing or AWT, and
+ * prints the throughput and the final per-team statistics of each match.
+ * The matches go through the same GameStateTimeline as in the viewer, so
+ * keyframing and seeking are timed too.
+ *
+ * Usage: HeadlessReplay &lt;match file&gt; [&lt;match file&gt; ...]
+ *
+ * The viewer also runs this instead of opening a window when
+ * bc.client.headless is true and bc.client.match is set.
+ */
+public class HeadlessReplay {
+
+	private final Object roundSignal = new Object();
+
+	private long rounds = 0;
+	private long signals = 0;
+	private long nanos = 0;
+
+	/**
+	 * Replays every match in the given file.
+	 *
+	 * @return false if the file couldn't be read
+	 */
+	public boolean replay(String path) {
+		ClientProxy proxy;
+		try {
+			proxy = Main.openMatchFile(path);
+		}
+		catch (IOException e) {
+			System.err.println(path + ": " + e.getMessage());
+			return false;
+		}
+		System.out.println(path);
+		while (true) {
+			BufferedMatch match = new BufferedMatch(proxy);
+			if (!replay(match)) {
+				break; // no further match in this file
+			}
+			MatchHeader header = match.getHeader();
+			if (match.isEarlyTermination()
+			    || header.getMatchNumber() + 1 >= header.getMatchCount()) {
+				break;
+			}
+		}
+		if (proxy instanceof StreamClientProxy
+		    && ((StreamClientProxy) proxy).getPipeline() != null) {
+			System.out.println("  " + ((StreamClientProxy) proxy).getPipeline());
+		}
+		if (proxy instanceof IndexedClientProxy) {
+			try {
+				((IndexedClientProxy) proxy).close();
+			}
+			catch (IOException e) {
+				System.err.println(path + ": " + e.getMessage());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the timeline of the match as it is buffered, then plays it
+	 * from start to end and seeks back through it like the viewer does.
+	 *
+	 * @return false if the match ended before its header was received
+	 */
+	private boolean replay(final BufferedMatch match) {
+		GameStateTimeline<ReplayState> timeline =
+			new GameStateTimeline<ReplayState>(match, ReplayState.FACTORY, 10, false);
+		ReplayState state = new ReplayState();
+		timeline.setTargetState(state);
+		match.addMatchListener(new MatchListener() {
+			public void headerReceived(BufferedMatch m) { wake(); }
+			public void footerReceived(BufferedMatch m) { wake(); }
+		});
+
+		// the header arrives on the match's reader thread, which also
+		// starts the timeline
+		synchronized (roundSignal) {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!timeline.isActive() && System.currentTimeMillis() < deadline) {
+				try {
+					roundSignal.wait(100);
+				}
+				catch (InterruptedException e) {}
+			}
+		}
+		MatchHeader header = match.getHeader();
+		if (!timeline.isActive()) {
+			timeline.terminate();
+			return false;
+		}
+
+		long start = System.nanoTime();
+		timeline.awaitRound(Integer.MAX_VALUE);
+		long elapsed = System.nanoTime() - start;
+		int numRounds = timeline.getNumRounds();
+		long matchSignals = 0;
+		for (int round = 0; round < numRounds; round++) {
+			matchSignals += match.getRound(round).getSignals().length;
+		}
+
+		// play through, then seek back in quarters and return to the end
+		long playStart = System.nanoTime();
+		for (int round = 0; round <= numRounds; round++) {
+			timeline.setRound(round);
+		}
+		long playNanos = System.nanoTime() - playStart;
+		long seekStart = System.nanoTime();
+		int seeks = 0;
+		for (int quarter = 3; quarter >= 0; quarter--) {
+			timeline.setRound(numRounds * quarter / 4);
+			seeks++;
+		}
+		timeline.setRound(numRounds);
+		seeks++;
+		long seekNanos = System.nanoTime() - seekStart;
+		timeline.terminate();
+
+		rounds += numRounds;
+		signals += matchSignals;
+		nanos += elapsed;
+		printMatch(header, match.getFooter(), state, numRounds, matchSignals, elapsed);
+		System.out.printf("    playback %.0f rounds/s, seek %.2f ms%n",
+		                  perSecond(numRounds, playNanos), seekNanos / 1e6 / seeks);
+		printStore("deltas", match.getDeltaStore());
+		printStore("stats", match.getStatsStore());
+		return true;
+	}
+
+	private static void printStore(String name, RoundStore<?> store) {
+		System.out.printf("    %s: %d hits, %d misses, %d spilled%n", name,
+		                  store.getHits(), store.getMisses(), store.getSpills());
+	}
+
+	private void wake() {
+		synchronized (roundSignal) {
+			roundSignal.notifyAll();
+		}
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return (nanos == 0 ? 0 : count * 1e9 / nanos);
+	}
+
+	private static void printMatch(MatchHeader header, MatchFooter footer, ReplayState state,
+	                               int rounds, long signals, long nanos) {
+		System.out.printf("  game %d of %d: %d rounds, winner %s%n",
+		                  header.getMatchNumber() + 1, header.getMatchCount(), rounds,
+		                  (footer == null ? "unknown" : footer.getWinner()));
+		System.out.printf("    %.0f rounds/s, %.0f signals/s%n",
+		                  perSecond(rounds, nanos), perSecond(signals, nanos));
+		for (Team t : new Team[]{Team.A, Team.B}) {
+			StringBuilder units = new StringBuilder();
+			int[] counts = state.getRobotCounts(t);
+			for (RobotType type : RobotType.values()) {
+				if (counts[type.ordinal()] > 0) {
+					units.append(' ').append(type.toString().toLowerCase())
+						.append('=').append(counts[type.ordinal()]);
+				}
+			}
+			System.out.printf("    team %s: hp %.1f, resources %.1f,%s%n", t,
+			                  state.getTeamHP(t), state.getTeamResources(t), units);
+		}
+	}
+
+	public void printTotals() {
+		System.out.printf("total: %d rounds, %d signals in %.2f s (%.0f rounds/s, %.0f signals/s)%n",
+		                  rounds, signals, nanos / 1e9,
+		                  perSecond(rounds, nanos), perSecond(signals, nanos));
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length == 0) {
+			System.err.println("usage: HeadlessReplay <match file> [<match file> ...]");
+			System.exit(64);
+		}
+		HeadlessReplay replay = new HeadlessReplay();
+		boolean ok = true;
+		for (String path : args) {
+			ok &= replay.replay(path);
+		}
+		replay.printTotals();
+		System.exit(ok ? 0 : 1);
+	}
+}
@@ -0,0 +1,70 @@
+package battlecode.client;
+
+import battlecode.serial.notification.Notification;
+
+import battlecode.engine.signal.Signal;
+
+import java.io.*;
+
+/**
+ * Reads a match from an indexed match file. Header, footer and other
+ * bookkeeping objects are returned as they are, while rounds are returned as
+ * {@link IndexedMatchFile.Chunk}s that are only deserialized when needed.
+ */
+public final class IndexedClientProxy implements ClientProxy {
+
+	private final IndexedMatchFile file;
+	private int next = 0;
+
+	private Object peekBuffer;
+	private boolean peeked = false;
+
+	public IndexedClientProxy(String path) throws IOException {
+		file = new IndexedMatchFile(path);
+	}
+
+	public Object readObject() throws EOFException {
+		Object o = peekObject();
+		peeked = false;
+		peekBuffer = null;
+		next++;
+		return o;
+	}
+
+	public Object peekObject() throws EOFException {
+		if (peeked) {
+			return peekBuffer;
+		}
+		if (next >= file.getEntryCount()) {
+			throw new EOFException();
+		}
+		if (file.getKind(next) == IndexedMatchFile.KIND_OBJECT) {
+			peekBuffer = file.getChunk(next).load();
+		}
+		else {
+			peekBuffer = file.getChunk(next);
+		}
+		peeked = true;
+		return peekBuffer;
+	}
+
+	public boolean isDebuggingAvailable() {
+		return false;
+	}
+
+	public void writeNotification(Notification n) {
+		assert false: "Indexed match files cannot be debugged";
+	}
+
+	public void writeSignal(Signal s) {
+		assert false: "Indexed match files cannot be debugged";
+	}
+
+	/**
+	 * Closes the match file. Rounds that haven't been loaded yet can't be
+	 * loaded afterwards.
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,306 @@
+package battlecode.client;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * A replay file with a round index table, so that single rounds can be read
+ * without deserializing the whole match.
+ *
+ * The file starts with a fixed header (magic, version and the offset of the
+ * index table), followed by one independently serialized chunk per object of
+ * the original match stream. The index table at the end of the file records
+ * the kind, offset and length of every chunk. The chunk area is memory-mapped,
+ * so reading a round only touches the pages of that round.
+ *
+ * For an example of usage, see the main method below, which converts a
+ * gzipped .rms match file into this format.
+ */
+public final class IndexedMatchFile {
+
+	/** "BCRI" */
+	public static final int MAGIC = 0x42435249;
+
+	public static final int VERSION = 1;
+
+	/** The file extension used for indexed match files. */
+	public static final String EXTENSION = ".rmi";
+
+	/** A chunk that is delivered in stream order (headers, footers, ...). */
+	public static final byte KIND_OBJECT = 0;
+
+	/** A chunk holding a RoundDelta, which may be loaded lazily. */
+	public static final byte KIND_DELTA = 1;
+
+	/** A chunk holding a RoundStats, which may be loaded lazily. */
+	public static final byte KIND_STATS = 2;
+
+	// magic, version, index offset
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	/** The whole file, or null if it is too large to be mapped at once. */
+	private final MappedByteBuffer mapped;
+
+	private final byte[] kinds;
+	private final long[] offsets;
+	private final int[] lengths;
+
+	/**
+	 * A lazily loaded reference to a single chunk of an indexed match file.
+	 */
+	public static final class Chunk {
+
+		private final IndexedMatchFile file;
+		private final int entry;
+
+		private Chunk(IndexedMatchFile file, int entry) {
+			this.file = file;
+			this.entry = entry;
+		}
+
+		public byte getKind() {
+			return file.getKind(entry);
+		}
+
+		/**
+		 * Deserializes the chunk. Every call returns a fresh object.
+		 */
+		public Object load() {
+			try {
+				return file.readEntry(entry);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Deserialization failed");
+			}
+		}
+	}
+
+	/**
+	 * Opens an indexed match file for reading.
+	 *
+	 * @param path the path of the file
+	 * @throws IOException if the file couldn't be read or is not an indexed
+	 * match file
+	 */
+	public IndexedMatchFile(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		if (file.readInt() != MAGIC) {
+			file.close();
+			throw new IOException(path + " is not an indexed match file");
+		}
+		int version = file.readInt();
+		if (version != VERSION) {
+			file.close();
+			throw new IOException("Unsupported indexed match file version " + version);
+		}
+		long indexOffset = file.readLong();
+
+		ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+		                               channel.size() - indexOffset);
+		int count = index.getInt();
+		kinds = new byte[count];
+		offsets = new long[count];
+		lengths = new int[count];
+		for (int i = 0; i < count; i++) {
+			kinds[i] = index.get();
+			offsets[i] = index.getLong();
+			lengths[i] = index.getInt();
+		}
+
+		if (indexOffset <= Integer.MAX_VALUE) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexOffset);
+		}
+		else {
+			mapped = null;
+		}
+	}
+
+	/**
+	 * @return whether the given file starts with the indexed match file magic
+	 */
+	public static boolean isIndexed(String path) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(path));
+			return in.readInt() == MAGIC;
+		}
+		catch (IOException e) {
+			return false;
+		}
+		finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) {}
+			}
+		}
+	}
+
+	public int getEntryCount() {
+		return kinds.length;
+	}
+
+	public byte getKind(int entry) {
+		return kinds[entry];
+	}
+
+	public Chunk getChunk(int entry) {
+		return new Chunk(this, entry);
+	}
+
+	/**
+	 * Deserializes a single chunk of the file.
+	 */
+	public Object readEntry(int entry) throws IOException {
+		ByteBuffer buf;
+		if (mapped != null) {
+			buf = mapped.duplicate();
+			buf.position((int) offsets[entry]);
+			buf.limit((int) offsets[entry] + lengths[entry]);
+		}
+		else {
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, offsets[entry], lengths[entry]);
+		}
+		ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buf));
+		try {
+			return ois.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Unknown class in match file: " + e.getMessage());
+		}
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buf;
+
+		public ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		public int read() {
+			return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		public int available() {
+			return buf.remaining();
+		}
+	}
+
+	/**
+	 * Writes the objects of a match stream into a new indexed match file.
+	 */
+	public static final class Writer {
+
+		private final String path;
+		private final DataOutputStream out;
+		private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+		private final DataOutputStream indexOut = new DataOutputStream(index);
+		private long offset = HEADER_SIZE;
+		private int count = 0;
+
+		public Writer(String path) throws IOException {
+			this.path = path;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(0); // patched in close
+		}
+
+		public void writeObject(Object o) throws IOException {
+			byte kind = KIND_OBJECT;
+			if (o instanceof RoundDelta) {
+				kind = KIND_DELTA;
+			}
+			else if (o instanceof RoundStats) {
+				kind = KIND_STATS;
+			}
+			chunk.reset();
+			ObjectOutputStream oos = new ObjectOutputStream(chunk);
+			oos.writeObject(o);
+			oos.close();
+			chunk.writeTo(out);
+
+			indexOut.writeByte(kind);
+			indexOut.writeLong(offset);
+			indexOut.writeInt(chunk.size());
+			offset += chunk.size();
+			count++;
+		}
+
+		public void close() throws IOException {
+			out.writeInt(count);
+			indexOut.flush();
+			index.writeTo(out);
+			out.close();
+
+			RandomAccessFile raf = new RandomAccessFile(path, "rw");
+			try {
+				raf.seek(8);
+				raf.writeLong(offset);
+			}
+			finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Converts a gzipped match file, as written by the server, into an indexed
+	 * match file.
+	 *
+	 * @param src the path of the .rms file
+	 * @param dst the path of the indexed file to write
+	 * @return the number of objects written
+	 */
+	public static int convert(String src, String dst) throws IOException {
+		StreamClientProxy in = new StreamClientProxy(src);
+		Writer out = new Writer(dst);
+		int count = 0;
+		try {
+			while (true) {
+				out.writeObject(in.readObject());
+				count++;
+			}
+		}
+		catch (EOFException e) {
+			// end of the match stream
+		}
+		finally {
+			out.close();
+		}
+		return count;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: IndexedMatchFile <match.rms> [<match" + EXTENSION + ">]");
+			System.exit(64);
+		}
+		String dst = (args.length > 1 ? args[1] : args[0] + EXTENSION);
+		int count = convert(args[0], dst);
+		System.out.println("Wrote " + count + " objects to " + dst);
+	}
+}
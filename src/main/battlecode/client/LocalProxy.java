@@ -2,7 +2,8 @@ package battlecode.client;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import battlecode.serial.*;
 import battlecode.serial.notification.Notification;
@@ -13,9 +14,27 @@ public class LocalProxy extends Proxy implements ClientProxy {
 
 	public static final LocalProxy INSTANCE = new LocalProxy(); 
 	
-	private final Queue<Object> queue;
+	private final BlockingQueue<Entry> queue;
+
+	// the entry taken off the queue by peekObject, guarded by readLock
+	private final Object readLock = new Object();
+	private volatile Entry peeked = null;
 	
 	private final Notifier notifier;
+
+	private volatile long totalLatency = 0;
+	private volatile long numRead = 0;
+	private volatile int maxQueueDepth = 0;
+
+	private static class Entry {
+		public final Object obj;
+		public final long enqueued;
+
+		public Entry(Object obj) {
+			this.obj = obj;
+			this.enqueued = System.nanoTime();
+		}
+	}
 	
 	private static class Notifier extends Observable {
 		public void notify(Object obj) {
@@ -27,7 +46,7 @@ public class LocalProxy extends Proxy implements ClientProxy {
 	
 	// Can't instantiate.
 	private LocalProxy() {
-		queue = new ConcurrentLinkedQueue<Object>();
+		queue = new LinkedBlockingQueue<Entry>();
 		notifier = new Notifier();
 	}
 
@@ -36,34 +55,67 @@ public class LocalProxy extends Proxy implements ClientProxy {
 	}
 
 	public void writeObject(Object o) throws IOException {
-		queue.add(o);
+		queue.add(new Entry(o));
+		int depth = queue.size();
+		if (depth > maxQueueDepth) {
+			maxQueueDepth = depth;
+		}
+	}
+
+	private Entry take() {
+		while (true) {
+			try {
+				return queue.take();
+			} catch (InterruptedException e) {
+			}
+		}
 	}
 
 	public Object readObject() throws EOFException {
-		synchronized (queue) {
-			while (queue.isEmpty())
-				try {
-					Thread.sleep(250);
-				} catch (InterruptedException e) {
-				}
-			return queue.poll();
+		synchronized (readLock) {
+			Entry e = peeked;
+			if (e == null) {
+				e = take();
+			}
+			peeked = null;
+			totalLatency += System.nanoTime() - e.enqueued;
+			numRead++;
+			return e.obj;
 		}
 	}
 
 	public Object peekObject() throws EOFException {
 		assert false: "Local match shouldn't have best-of-3 early termination";
-		synchronized (queue) {
-			while (queue.isEmpty()) {
-				try {
-					Thread.sleep(250);
-				}
-				catch (InterruptedException e) {
-				}
+		synchronized (readLock) {
+			if (peeked == null) {
+				peeked = take();
 			}
-			return queue.peek();
+			return peeked.obj;
 		}
 	}
 
+	/**
+	 * @return the number of objects written but not yet read
+	 */
+	public int getQueueDepth() {
+		return queue.size() + (peeked == null ? 0 : 1);
+	}
+
+	/**
+	 * @return the largest number of objects that were waiting in the queue
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * @return the average time in nanoseconds between writing an object and
+	 * reading it
+	 */
+	public long getAverageLatency() {
+		return (numRead == 0 ? 0 : totalLatency / numRead);
+	}
+
 	public boolean isDebuggingAvailable() {
 		return true;
 	}
@@ -0,0 +1,118 @@
+package battlecode.client;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A stand-in RPC server on the local machine, for trying out and testing
+ * RPCClient without a build server.
+ *
+ * It speaks both protocols RPCClient understands: multiplexed Requests on a
+ * persistent connection, and a single bare argument per connection. The
+ * default handler answers "find-match-inputs" from the local filesystem.
+ */
+public class LocalRPCServer implements Runnable {
+
+	/** Answers the argument of a single call. */
+	public interface Handler {
+
+		public Object handle(Object arg);
+	}
+
+	/** Answers "find-match-inputs" like a build server would. */
+	public static final Handler MATCH_INPUTS = new Handler() {
+		public Object handle(Object arg) {
+			if ("find-match-inputs".equals(arg)) {
+				return new MatchInputFinder().findMatchInputsLocally();
+			}
+			return null;
+		}
+	};
+
+	private final ServerSocket serverSocket;
+	private final Handler handler;
+
+	/**
+	 * Listens on the given port of the loopback interface. Use port 0 to
+	 * pick any free port, see getPort.
+	 */
+	public LocalRPCServer(int port, Handler handler) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+		this.handler = handler;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts serving on a daemon thread.
+	 */
+	public LocalRPCServer start() {
+		Thread t = new Thread(this, "local RPC server");
+		t.setDaemon(true);
+		t.start();
+		return this;
+	}
+
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				Thread t = new Thread("local RPC connection") {
+					public void run() { serve(socket); }
+				};
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				// closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			ObjectInputStream input = new ObjectInputStream(socket.getInputStream());
+			ObjectOutputStream output = new ObjectOutputStream(socket.getOutputStream());
+			output.flush();
+			while (true) {
+				Object o = input.readObject();
+				if (o instanceof RPCClient.Request) {
+					RPCClient.Request request = (RPCClient.Request) o;
+					output.writeObject(new RPCClient.Response(request.id, handler.handle(request.arg)));
+					output.reset();
+					output.flush();
+				} else {
+					output.writeObject(handler.handle(o));
+					output.flush();
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// the client hung up
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0 ? Integer.parseInt(args[0]) : RPCClient.DEFAULT_PORT);
+		LocalRPCServer server = new LocalRPCServer(port, MATCH_INPUTS);
+		System.out.println("Serving RPC calls on port " + server.getPort());
+		server.run();
+	}
+}
@@ -6,8 +6,6 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.net.UnknownHostException;
 
 import javax.swing.JFrame;
@@ -71,6 +69,17 @@ public class Main {
         });
     }
 
+    /**
+     * Opens a saved match, either an indexed match file or a gzipped
+     * match stream as written by the server.
+     */
+    public static ClientProxy openMatchFile(String path) throws IOException {
+        if (IndexedMatchFile.isIndexed(path)) {
+            return new IndexedClientProxy(path);
+        }
+        return new StreamClientProxy(path);
+    }
+
     private static void runLocal(Config options) {
         MatchDialog md = new MatchDialog(null);
         if (!options.getBoolean("bc.dialog.skip"))
@@ -99,7 +108,7 @@ public class Main {
                         }
                     }
 
-                    theProxy = new StreamClientProxy(filePath);
+                    theProxy = openMatchFile(filePath);
                 } catch (IOException e) {
                     e.printStackTrace();
                     return;
@@ -128,23 +137,14 @@ public class Main {
 
             case REMOTE:
                 try {
-                    Socket socket = new Socket(md.getSource(), 6370);
-
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
                     String teamA = md.getParameter(Parameter.TEAM_A), teamB = md.getParameter(Parameter.TEAM_B);
                     String[] maps = md.getAllMaps().toArray(new String[0]);
-                    out.writeObject(new MatchInfo(teamA, teamB, maps));
-                    out.flush();
-
-                    Thread.sleep(1000);
-
-                    theProxy = new StreamClientProxy(socket.getInputStream(), out);
+                    theProxy = new RemoteClientProxy(md.getSource(), RemoteClientProxy.DEFAULT_PORT,
+                            new MatchInfo(teamA, teamB, maps));
                 } catch (UnknownHostException e) {
                     e.printStackTrace();
                 } catch (IOException e) {
                     e.printStackTrace();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
                 }
 
                 break;
@@ -163,9 +163,15 @@ public class Main {
 
     public static boolean run(Config options) {
 				if (options.get("bc.client.match") != null && !options.get("bc.client.match").trim().equals("")) {
+						if ("true".equalsIgnoreCase(options.get("bc.client.headless"))) {
+								HeadlessReplay replay = new HeadlessReplay();
+								boolean ok = replay.replay(options.get("bc.client.match"));
+								replay.printTotals();
+								return ok;
+						}
 						ClientProxy theProxy;
 						try {
-								theProxy = new StreamClientProxy(options.get("bc.client.match"));
+								theProxy = openMatchFile(options.get("bc.client.match"));
 						} catch (IOException e) {
 								e.printStackTrace();
 								return false;
@@ -381,8 +381,10 @@ public class MatchDialog extends JDialog implements ActionListener {
 		}
 		
 		// Radio button change: disable/enable appropriate inputs
-		else if ("choice".equals(cmd))
+		else if ("choice".equals(cmd)) {
 			enableFields();
+			populateParameters();
+		}
 		
 		// Save to file: disable/enable appropriate inputs
 		else if ("save".equals(cmd))
@@ -592,46 +594,58 @@ public class MatchDialog extends JDialog implements ActionListener {
 	/**
 	 * Fills the dropdown match input boxes with available team and map
 	 * choices. Either does so locally, if local is selected, or uses an RPC
-	 * to determine the choices available on the remote host.
+	 * to determine the choices available on the remote host. The lookup runs
+	 * in the background; cached choices are shown right away and replaced
+	 * when fresh ones arrive.
 	 */
 	private void populateParameters() {
-		String[][] matchInputs;
-		
-		if (choices.get(Choice.REMOTE).isSelected())
-			matchInputs = finder.findMatchInputsRemotely(getSource());
-		else
-			matchInputs = finder.findMatchInputsLocally();
-		
-		if (matchInputs != null) {
-
-
-			for(String [] s : matchInputs) {
-				java.util.Arrays.sort(s);
-			}
-
-			// Clear dropdowns.
-			for (Map.Entry<Parameter, JComboBox> entries : parameters.entrySet())
-				entries.getValue().removeAllItems();
-			
-			Set<String> items = new HashSet<String>();
-			
-			// Add items.
-			for (String s : matchInputs[0]) {
-				if (items.contains(s))
-					continue;
-				items.add(s);
-				parameters.get(Parameter.TEAM_A).addItem(s);
-				parameters.get(Parameter.TEAM_B).addItem(s);
+		final String host = (choices.get(Choice.REMOTE).isSelected() ? getSource() : null);
+		finder.findMatchInputsAsync(host, new MatchInputFinder.Listener() {
+			public void matchInputsFound(String h, final String[][] matchInputs) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						// ignore answers for a source that is no longer selected
+						String current = (choices.get(Choice.REMOTE).isSelected() ? getSource() : null);
+						if (host == null ? current == null : host.equals(current))
+							setMatchInputs(matchInputs);
+					}
+				});
 			}
-			
-			items.clear();
-			for (String s : matchInputs[1]) {
-				if (items.contains(s))
-					continue;
-				items.add(s);
-				parameters.get(Parameter.MAP).addItem(s);
+		});
+	}
+	
+	/**
+	 * Replaces the choices of the dropdown boxes, keeping the current
+	 * selections. Boxes whose choices haven't changed are left alone.
+	 */
+	private void setMatchInputs(String[][] matchInputs) {
+		Set<String> teams = new TreeSet<String>(Arrays.asList(matchInputs[0]));
+		Set<String> maps = new TreeSet<String>(Arrays.asList(matchInputs[1]));
+		
+		setItems(parameters.get(Parameter.TEAM_A), teams);
+		setItems(parameters.get(Parameter.TEAM_B), teams);
+		setItems(parameters.get(Parameter.MAP), maps);
+	}
+	
+	private void setItems(JComboBox box, Set<String> items) {
+		if (box.getItemCount() == items.size()) {
+			boolean same = true;
+			int i = 0;
+			for (String s : items) {
+				if (!s.equals(box.getItemAt(i++))) {
+					same = false;
+					break;
+				}
 			}
+			if (same)
+				return;
 		}
+		
+		Object selected = box.getSelectedItem();
+		box.removeAllItems();
+		for (String s : items)
+			box.addItem(s);
+		box.setSelectedItem(selected);
 	}
 	
 	/**
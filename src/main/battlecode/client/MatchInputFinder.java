@@ -1,23 +1,158 @@
 package battlecode.client;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import battlecode.server.Config;
 import battlecode.server.Server;
 
+/**
+ * Finds the teams and maps available locally or on a remote host.
+ *
+ * Results are cached by host for bc.client.match-inputs-ttl milliseconds
+ * (one minute by default). findMatchInputsAsync answers from the cache
+ * right away, even if the entry has expired, and refreshes expired entries
+ * on a background thread. If a remote host can't be reached and nothing is
+ * cached for it, the local teams and maps are offered instead.
+ */
 public class MatchInputFinder extends battlecode.server.MatchInputFinder {
 
+	/** Receives the match inputs found by findMatchInputsAsync. */
+	public interface Listener {
+
+		/**
+		 * Called once with cached inputs, if any, and again whenever fresh
+		 * inputs have been found. May be called on a background thread.
+		 *
+		 * @param host the host passed to findMatchInputsAsync
+		 * @param inputs the teams and the maps
+		 */
+		public void matchInputsFound(String host, String[][] inputs);
+	}
+
+	private static final long DEFAULT_TTL = 60000;
+
+	/** The cache key of the local machine. */
+	private static final String LOCAL = "";
+
+	private static final class Entry {
+		String[][] inputs;
+		long expires;
+		/** The listeners waiting for a refresh in progress, or null. */
+		List<Listener> waiting;
+		List<String> hosts;
+	}
+
+	private static final Map<String, Entry> cache = new HashMap<String, Entry>();
+
+	private static final ExecutorService refresher = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "match input finder");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private static long getTTL() {
+		String ttl = Config.getGlobalConfig().get("bc.client.match-inputs-ttl");
+		if (ttl == null || ttl.trim().equals("")) {
+			return DEFAULT_TTL;
+		}
+		return Long.parseLong(ttl.trim());
+	}
+
 	public String[][] findMatchInputsRemotely(String host) {
-		try {			
+		try {
 			// Attempt to make an RPC call to the remote machine.
-			Object result = new RPCClient(host).call("find-match-inputs");
+			Object result = RPCClient.forHost(host).call("find-match-inputs");
 			if (result instanceof String[][])
 				return (String[][]) result;
-			
+
 		} catch (Exception e) {
 			Server.warn("couldn't request teams from remote machine: "
 						+ e.getMessage());
 		}
-		
+
 		// If something went wrong...
 		return null;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Finds the match inputs of the given host, or of the local machine if
+	 * host is null or empty, without blocking on the network or disk.
+	 *
+	 * @param host the remote host, or null
+	 * @param listener receives the cached and the refreshed inputs
+	 */
+	public void findMatchInputsAsync(final String host, Listener listener) {
+		final String key = (host == null ? LOCAL : host.trim());
+		String[][] cached = null;
+		boolean refresh = false;
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				cache.put(key, entry);
+			}
+			cached = entry.inputs;
+			if (entry.waiting != null) {
+				// a refresh is already running
+				entry.waiting.add(listener);
+				entry.hosts.add(host);
+			}
+			else if (cached == null || System.currentTimeMillis() >= entry.expires) {
+				entry.waiting = new ArrayList<Listener>();
+				entry.hosts = new ArrayList<String>();
+				entry.waiting.add(listener);
+				entry.hosts.add(host);
+				refresh = true;
+			}
+		}
+		if (cached != null) {
+			listener.matchInputsFound(host, cached);
+		}
+		if (refresh) {
+			refresher.execute(new Runnable() {
+				public void run() { refresh(key); }
+			});
+		}
+	}
+
+	private void refresh(String key) {
+		String[][] inputs = (key.equals(LOCAL) ? findMatchInputsLocally()
+		                     : findMatchInputsRemotely(key));
+		List<Listener> listeners;
+		List<String> hosts;
+		boolean fallback = false;
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if (inputs != null) {
+				entry.inputs = inputs;
+				entry.expires = System.currentTimeMillis() + getTTL();
+			}
+			else if (entry.inputs == null) {
+				fallback = true;
+			}
+			listeners = entry.waiting;
+			hosts = entry.hosts;
+			entry.waiting = null;
+			entry.hosts = null;
+		}
+		if (fallback) {
+			// the host couldn't be reached and there is nothing to show for it
+			inputs = findMatchInputsLocally();
+		}
+		if (inputs == null) {
+			return;
+		}
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).matchInputsFound(hosts.get(i), inputs);
+		}
+	}
+
+}
@@ -1,23 +1,167 @@
 package battlecode.client;
 
+import battlecode.server.Config;
 import battlecode.server.Server;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A utility class for making remote method calls.
+ *
+ * The client keeps its connection open and multiplexes calls over it: every
+ * call is sent as a Request with its own ID, and a reader thread hands each
+ * Response to the call with the same ID, so several calls can be in flight
+ * at once. Use forHost to share one connection per host.
+ *
+ * Servers that only answer a single bare argument and then close the
+ * connection are detected on the first call; after that, every call opens
+ * its own connection as before.
  */
 public class RPCClient {
-	
+
+	/** The default RPC port. */
+	public static final int DEFAULT_PORT = 12370;
+
+	/** The default call timeout, unless bc.client.rpc-timeout is set. */
+	private static final long DEFAULT_TIMEOUT = 5000;
+
+	/** The shared clients, by host and port. */
+	private static final Map<String, RPCClient> pool = new HashMap<String, RPCClient>();
+
+	/** A call, as sent to a server that multiplexes calls. */
+	public static final class Request implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int id;
+		public final Object arg;
+
+		public Request(int id, Object arg) {
+			this.id = id;
+			this.arg = arg;
+		}
+	}
+
+	/** The reply to a Request. */
+	public static final class Response implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int id;
+		public final Object result;
+
+		public Response(int id, Object result) {
+			this.id = id;
+			this.result = result;
+		}
+	}
+
+	/** A call whose response hasn't necessarily arrived yet. */
+	private static final class PendingCall implements Future<Object> {
+
+		final Object arg;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Object result;
+		private volatile Throwable failure;
+		private volatile boolean cancelled = false;
+
+		// the calls waiting for a response that this call is one of, if any
+		private Map<Integer, PendingCall> pending = null;
+		private int id;
+
+		PendingCall(Object arg) {
+			this.arg = arg;
+		}
+
+		void register(Map<Integer, PendingCall> pending, int id) {
+			this.pending = pending;
+			this.id = id;
+			pending.put(id, this);
+		}
+
+		void complete(Object result) {
+			this.result = result;
+			done.countDown();
+		}
+
+		void fail(Throwable failure) {
+			this.failure = failure;
+			done.countDown();
+		}
+
+		/**
+		 * Stops waiting for the response, which is dropped if it arrives
+		 * later.
+		 */
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (isDone()) {
+				return false;
+			}
+			cancelled = true;
+			if (pending != null) {
+				pending.remove(id);
+			}
+			done.countDown();
+			return true;
+		}
+
+		public boolean isCancelled() { return cancelled; }
+		public boolean isDone() { return done.getCount() == 0; }
+
+		public Object get() throws InterruptedException, ExecutionException {
+			done.await();
+			return getResult();
+		}
+
+		public Object get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return getResult();
+		}
+
+		private Object getResult() throws ExecutionException {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return result;
+		}
+	}
+
+	private final String host;
+	private final int port;
+	private final long timeout;
+
 	/** The socket to use for communication. */
 	private final Socket socket;
-	
-	/** The default RPC port. */
-	private static final int DEFAULT_PORT = 12370;
-	
+	private final ObjectOutputStream output;
+
+	private final Map<Integer, PendingCall> pending = new ConcurrentHashMap<Integer, PendingCall>();
+	private int nextID = 0;
+
+	/** Whether the server answers a single bare argument per connection. */
+	private volatile boolean oneShot = false;
+	private volatile boolean closed = false;
+
 	/**
 	 * Creates a new RPC client that will talk to the given host over the
 	 * default port.
@@ -29,7 +173,7 @@ public class RPCClient {
 	public RPCClient(String host) throws UnknownHostException, IOException {
 		this(host, DEFAULT_PORT);
 	}
-	
+
 	/**
 	 * Creates a new RPC client that will talk to the given host over the given
 	 * port.
@@ -39,9 +183,82 @@ public class RPCClient {
 	 * @throws IOException if the host couldn't be reached
 	 */
 	public RPCClient(String host, int port) throws UnknownHostException, IOException {
+		this.host = host;
+		this.port = port;
+		String t = Config.getGlobalConfig().get("bc.client.rpc-timeout");
+		timeout = (t == null || t.trim().equals("") ? DEFAULT_TIMEOUT : Long.parseLong(t.trim()));
 		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		output = new ObjectOutputStream(socket.getOutputStream());
+		output.flush();
+		Thread reader = new Thread("RPC reader " + host + ":" + port) {
+			public void run() { readResponses(); }
+		};
+		reader.setDaemon(true);
+		reader.start();
 	}
-	
+
+	/**
+	 * Returns the shared client for the given host and the default port,
+	 * connecting if there is none or its connection was closed.
+	 *
+	 * @param host the hostname of the remote machine
+	 * @throws UnknownHostException if the host couldn't be resolved
+	 * @throws IOException if the host couldn't be reached
+	 */
+	public static RPCClient forHost(String host) throws UnknownHostException, IOException {
+		return forHost(host, DEFAULT_PORT);
+	}
+
+	public static RPCClient forHost(String host, int port) throws UnknownHostException, IOException {
+		String key = host + ":" + port;
+		synchronized (pool) {
+			RPCClient client = pool.get(key);
+			if (client == null || client.isClosed()) {
+				client = new RPCClient(host, port);
+				pool.put(key, client);
+			}
+			return client;
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Sends a call without waiting for its response, so that several calls
+	 * can be pipelined on the connection.
+	 *
+	 * @param arg the argument to the RPC server
+	 * @return the pending response
+	 */
+	public Future<Object> submit(Object arg) {
+		PendingCall call = new PendingCall(arg);
+		if (oneShot) {
+			callOnce(call);
+			return call;
+		}
+		synchronized (output) {
+			if (closed) {
+				call.fail(new IOException("RPC connection closed"));
+				return call;
+			}
+			int id = nextID++;
+			call.register(pending, id);
+			try {
+				output.writeObject(new Request(id, arg));
+				output.reset();
+				output.flush();
+			} catch (IOException e) {
+				pending.remove(id);
+				call.fail(e);
+				close();
+			}
+		}
+		return call;
+	}
+
 	/**
 	 * Pass the given argument to the RPC server and return its reply.
 	 *
@@ -50,30 +267,120 @@ public class RPCClient {
 	 * @return the RPC server's response
 	 */
 	public <T> Object call(T arg) {
+		return call(arg, timeout);
+	}
+
+	/**
+	 * Pass the given argument to the RPC server and return its reply, or null
+	 * if there was none within the given time.
+	 *
+	 * @param arg the argument to the RPC server
+	 * @param timeoutMillis the time to wait for the reply
+	 * @param <T> the type of the argument to the RPC server
+	 * @return the RPC server's response
+	 */
+	public <T> Object call(T arg, long timeoutMillis) {
+		Future<Object> call = submit(arg);
+		try {
+			return call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// so that its entry doesn't wait for the connection to close
+			call.cancel(false);
+			Server.error("RPC client error: no reply from " + host + " within " + timeoutMillis + " ms");
+		} catch (ExecutionException e) {
+			Server.error("RPC client error: " + e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			call.cancel(false);
+			Server.error("RPC client error: interrupted");
+		}
+
+		// If something went wrong...
+		return null;
+	}
+
+	private void readResponses() {
+		boolean multiplexed = false;
 		try {
-			// Use serialization.
-			ObjectOutputStream output = new ObjectOutputStream(socket.getOutputStream());
 			ObjectInputStream input = new ObjectInputStream(socket.getInputStream());
-			
-			// Write the argument to the stream.
-			output.writeObject(arg);
-			output.reset();
-			output.flush();
-			
-			// Get the input.
-			Object result = input.readObject();
-			
-			// Close the socket.
-			socket.close();
-			
-			return result;
+			while (true) {
+				Object o = input.readObject();
+				if (!(o instanceof Response)) {
+					// a server that answers one bare argument per connection
+					oneShot = true;
+					break;
+				}
+				multiplexed = true;
+				Response response = (Response) o;
+				PendingCall call = pending.remove(response.id);
+				if (call != null) {
+					call.complete(response.result);
+				}
+			}
 		} catch (IOException e) {
-			Server.error("RPC client error: " + e.getMessage());
+			if (!multiplexed && !pending.isEmpty()) {
+				// an older server that couldn't read the Request and hung up
+				oneShot = true;
+			} else if (!closed) {
+				Server.warn("RPC connection to " + host + " closed: " + e.getMessage());
+			}
 		} catch (ClassNotFoundException e) {
 			Server.error("RPC client error: " + e.getMessage());
 		}
-		
-		// If something went wrong...
-		return null;
+		close();
+	}
+
+	/**
+	 * Closes the connection. Calls still in flight are sent again one at a
+	 * time if the server turned out to answer single bare arguments, and
+	 * fail otherwise.
+	 */
+	public void close() {
+		List<PendingCall> calls;
+		synchronized (output) {
+			if (closed) {
+				return;
+			}
+			closed = !oneShot;
+			calls = new ArrayList<PendingCall>(pending.values());
+			pending.clear();
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {}
+		for (PendingCall call : calls) {
+			if (oneShot) {
+				callOnce(call);
+			} else {
+				call.fail(new IOException("RPC connection to " + host + " closed"));
+			}
+		}
+	}
+
+	/**
+	 * Makes a call on a connection of its own, for servers that don't
+	 * multiplex calls.
+	 */
+	private void callOnce(PendingCall call) {
+		Socket s = null;
+		try {
+			// Use serialization.
+			s = new Socket(host, port);
+			ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
+			out.writeObject(call.arg);
+			out.flush();
+			s.setSoTimeout((int) timeout);
+			ObjectInputStream in = new ObjectInputStream(s.getInputStream());
+			call.complete(in.readObject());
+		} catch (IOException e) {
+			call.fail(e);
+		} catch (ClassNotFoundException e) {
+			call.fail(e);
+		} finally {
+			if (s != null) {
+				try {
+					s.close();
+				} catch (IOException e) {}
+			}
+		}
 	}
 }
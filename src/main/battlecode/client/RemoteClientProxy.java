@@ -0,0 +1,350 @@
+package battlecode.client;
+
+import java.io.*;
+import java.net.Socket;
+
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.MatchInfo;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.notification.*;
+import battlecode.server.Config;
+
+/**
+ * Streams matches from a remote server while they are being played.
+ *
+ * The server only runs as far as the RunNotifications the viewer sends, so
+ * those act as credits: the MatchPlayer keeps up to getWindow() rounds
+ * requested ahead of playback (bc.client.remote-window, 50 by default).
+ *
+ * If the connection drops before the last match is over, the proxy
+ * reconnects (up to bc.client.remote-reconnects times) and asks the server
+ * for the same matches again. Matches are deterministic, so it resumes by
+ * skipping everything up to the last round it had delivered. The current
+ * run is resent right away, but a pause only once the stream has caught up,
+ * since a paused server would never send the rounds being skipped.
+ */
+public final class RemoteClientProxy implements ClientProxy {
+
+	public static final int DEFAULT_PORT = 6370;
+
+	private final String host;
+	private final int port;
+	private final MatchInfo info;
+	private final int window;
+	private final int maxReconnects;
+
+	private Socket socket;
+	private ObjectOutputStream out;
+	private StreamClientProxy stream;
+	private final Object writeLock = new Object();
+
+	// the state to restore after reconnecting
+	private boolean started = false;
+	private boolean paused = false;
+	private Notification lastRun = null;
+	// set while skipping the delivered part of the stream after reconnecting
+	private boolean resuming = false;
+
+	// how far the stream has been delivered
+	private int matches = 0;
+	private int objectsInMatch = 0;
+	private int roundsInMatch = 0;
+	private MatchHeader header = null;
+	private boolean footerReceived = false;
+
+	private Object peekBuffer;
+	private boolean peeked = false;
+
+	private volatile long bytes = 0;
+	private volatile long rounds = 0;
+	private volatile int reconnects = 0;
+	private volatile boolean connected = false;
+
+	private long sampleTime = System.nanoTime();
+	private long sampleBytes = 0;
+	private long sampleRounds = 0;
+	private double bytesPerSecond = 0;
+	private double roundsPerSecond = 0;
+
+	/**
+	 * Connects to the server and requests the given matches.
+	 */
+	public RemoteClientProxy(String host, int port, MatchInfo info) throws IOException {
+		this.host = host;
+		this.port = port;
+		this.info = info;
+		this.window = Math.max(2, getConfigInt("bc.client.remote-window", 50));
+		this.maxReconnects = getConfigInt("bc.client.remote-reconnects", 5);
+		connect();
+	}
+
+	private static int getConfigInt(String key, int def) {
+		String value = Config.getGlobalConfig().get(key);
+		if (value == null || value.trim().equals("")) {
+			return def;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+	private void connect() throws IOException {
+		Socket s = new Socket(host, port);
+		s.setTcpNoDelay(true);
+		ObjectOutputStream os = new ObjectOutputStream(s.getOutputStream());
+		os.writeObject(info);
+		os.flush();
+		synchronized (writeLock) {
+			socket = s;
+			out = os;
+			if (started) {
+				writeNotification(StartNotification.INSTANCE);
+			}
+			if (lastRun != null) {
+				writeNotification(lastRun);
+			}
+		}
+		stream = new StreamClientProxy(new CountingInputStream(s.getInputStream()), os);
+		connected = true;
+	}
+
+	private void disconnect() {
+		connected = false;
+		try {
+			socket.close();
+		}
+		catch (IOException e) {}
+	}
+
+	/**
+	 * @return the number of rounds to request ahead of playback
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	public Object readObject() throws EOFException {
+		if (peeked) {
+			peeked = false;
+			return peekBuffer;
+		}
+		while (true) {
+			try {
+				Object o = stream.readObject();
+				delivered(o);
+				return o;
+			}
+			catch (EOFException e) {
+				if (isComplete()) {
+					connected = false;
+					throw e;
+				}
+			}
+			catch (RuntimeException e) {
+				// the connection broke, fall through to reconnect
+			}
+			reconnect();
+		}
+	}
+
+	/**
+	 * @return whether the server has sent the footer of the last match
+	 */
+	private boolean isComplete() {
+		return header != null && footerReceived
+			&& header.getMatchNumber() + 1 >= header.getMatchCount();
+	}
+
+	private void delivered(Object o) {
+		if (o instanceof MatchHeader) {
+			header = (MatchHeader) o;
+			footerReceived = false;
+			matches++;
+			objectsInMatch = 0;
+			roundsInMatch = 0;
+			return;
+		}
+		objectsInMatch++;
+		if (o instanceof RoundDelta) {
+			roundsInMatch++;
+			rounds++;
+		}
+		else if (o instanceof MatchFooter) {
+			footerReceived = true;
+		}
+	}
+
+	/**
+	 * Reconnects and skips the part of the stream that was already
+	 * delivered.
+	 *
+	 * @throws EOFException if the server couldn't be reached again
+	 */
+	private void reconnect() throws EOFException {
+		disconnect();
+		for (int attempt = 1; attempt <= maxReconnects; attempt++) {
+			System.err.println("Connection to " + host + " lost in round " + roundsInMatch
+			                   + " of match " + matches + ", reconnecting (" + attempt + ")");
+			try {
+				Thread.sleep(500L * attempt);
+				synchronized (writeLock) {
+					resuming = true;
+				}
+				connect();
+				skipDelivered();
+				synchronized (writeLock) {
+					resuming = false;
+					if (paused) {
+						writeObject(PauseNotification.INSTANCE);
+					}
+				}
+				reconnects++;
+				return;
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+			catch (IOException e) {
+				disconnect();
+			}
+			catch (RuntimeException e) {
+				disconnect();
+			}
+		}
+		synchronized (writeLock) {
+			resuming = false;
+		}
+		throw new EOFException("Lost connection to " + host);
+	}
+
+	private void skipDelivered() throws EOFException {
+		int h = 0;
+		int k = 0;
+		while (h < matches || (h == matches && k < objectsInMatch)) {
+			Object o = stream.readObject();
+			if (o instanceof MatchHeader) {
+				h++;
+				k = 0;
+			}
+			else {
+				k++;
+			}
+		}
+	}
+
+	public Object peekObject() throws EOFException {
+		if (!peeked) {
+			peekBuffer = readObject();
+			peeked = true;
+		}
+		return peekBuffer;
+	}
+
+	public boolean isDebuggingAvailable() {
+		return true;
+	}
+
+	public void writeNotification(Notification n) {
+		synchronized (writeLock) {
+			if (n instanceof StartNotification) {
+				started = true;
+			}
+			else if (n instanceof RunNotification) {
+				lastRun = n;
+			}
+			else if (n instanceof PauseNotification) {
+				paused = true;
+			}
+			else if (n instanceof ResumeNotification) {
+				paused = false;
+			}
+			if (resuming && (n instanceof PauseNotification
+			                 || n instanceof ResumeNotification)) {
+				// sent once the stream has caught up
+				return;
+			}
+			writeObject(n);
+		}
+	}
+
+	public void writeSignal(Signal s) {
+		synchronized (writeLock) {
+			writeObject(s);
+		}
+	}
+
+	private void writeObject(Object o) {
+		try {
+			out.writeObject(o);
+			out.flush();
+		}
+		catch (IOException e) {
+			// the reader notices the broken connection and reconnects
+		}
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public int getReconnects() {
+		return reconnects;
+	}
+
+	public long getBytesReceived() {
+		return bytes;
+	}
+
+	private synchronized void sample() {
+		long now = System.nanoTime();
+		if (now - sampleTime >= 1000000000L) {
+			double seconds = (now - sampleTime) / 1e9;
+			long b = bytes;
+			long r = rounds;
+			bytesPerSecond = (b - sampleBytes) / seconds;
+			roundsPerSecond = (r - sampleRounds) / seconds;
+			sampleTime = now;
+			sampleBytes = b;
+			sampleRounds = r;
+		}
+	}
+
+	/**
+	 * @return the bytes received per second, over the last second or more
+	 */
+	public double getBytesPerSecond() {
+		sample();
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return the rounds received per second, over the last second or more
+	 */
+	public double getRoundsPerSecond() {
+		sample();
+		return roundsPerSecond;
+	}
+
+	private final class CountingInputStream extends FilterInputStream {
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				bytes++;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				bytes += n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,736 @@
+package battlecode.client;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.world.signal.BytecodesUsedSignal;
+import battlecode.world.signal.ControlBitsSignal;
+import battlecode.world.signal.DeathSignal;
+import battlecode.world.signal.EnergonChangeSignal;
+import battlecode.world.signal.MovementOverrideSignal;
+import battlecode.world.signal.MovementSignal;
+import battlecode.world.signal.ShieldChangeSignal;
+
+/**
+ * A compact binary encoding of match streams.
+ *
+ * Round deltas and the signals listed in CODECS are written through their
+ * public getters and read back through their public constructors: ints and
+ * robot IDs as variable-length integers, the robot IDs of a signal as
+ * differences of consecutive IDs, the parallel arrays of
+ * EnergonChangeSignal, ShieldChangeSignal and BytecodesUsedSignal as
+ * primitive arrays (doubles that are whole numbers as integers), and
+ * MapLocations as a packed pair. Class names are written once, the first
+ * time a class appears. Every other object (headers, footers, rarer
+ * signals, ...) is Java-serialized into one embedded object stream that is
+ * reset after each top-level object, so the class descriptions of the
+ * signals in a round are written once per round rather than once per
+ * signal. Any match stream can therefore be transcoded.
+ *
+ * The Writer and Reader are data streams that implement ObjectOutput and
+ * ObjectInput, so they can be used wherever the object streams are,
+ * without subclassing them. StreamClientProxy recognizes compact streams by
+ * their magic number. For an example of usage, see the main method below,
+ * which transcodes an .rms match file and prints the sizes of both.
+ */
+public final class SignalCodec {
+
+	/** "BCSC" */
+	public static final int MAGIC = 0x42435343;
+
+	public static final int VERSION = 3;
+
+	/** The file extension used for compact match files. */
+	public static final String EXTENSION = ".rmc";
+
+	// value codes; a code of FIRST_CLASS or more refers to a defined class
+	private static final int CODE_NULL = 0;
+	private static final int CODE_DEFINE = 1;
+	private static final int FIRST_CLASS = 2;
+
+	// class kinds
+	private static final byte KIND_SERIALIZED = 0;
+	private static final byte KIND_CODEC = 1;
+	private static final byte KIND_STRING = 2;
+	private static final byte KIND_ENUM = 3;
+	private static final byte KIND_LOCATION = 4;
+	private static final byte KIND_ARRAY = 5;
+
+	private SignalCodec() {}
+
+	/**
+	 * Writes the objects of one class through its getters and reads them
+	 * back through its constructor.
+	 */
+	private static abstract class Codec<T> {
+
+		final Class<T> type;
+
+		Codec(Class<T> type) {
+			this.type = type;
+		}
+
+		abstract void write(Writer out, T o) throws IOException;
+
+		abstract T read(Reader in) throws IOException, ClassNotFoundException;
+
+		@SuppressWarnings("unchecked")
+		final void writeObject(Writer out, Object o) throws IOException {
+			write(out, (T) o);
+		}
+	}
+
+	private static final Codec<?>[] CODECS = {
+		new Codec<RoundDelta>(RoundDelta.class) {
+			void write(Writer out, RoundDelta o) throws IOException {
+				out.encode(o.getSignals());
+			}
+			RoundDelta read(Reader in) throws IOException, ClassNotFoundException {
+				return new RoundDelta((Signal[]) in.decode());
+			}
+		},
+		new Codec<DeathSignal>(DeathSignal.class) {
+			void write(Writer out, DeathSignal o) throws IOException {
+				out.encodeInt(o.getObjectID());
+			}
+			DeathSignal read(Reader in) throws IOException {
+				return new DeathSignal(in.decodeInt());
+			}
+		},
+		new Codec<ControlBitsSignal>(ControlBitsSignal.class) {
+			void write(Writer out, ControlBitsSignal o) throws IOException {
+				out.encodeInt(o.getRobotID());
+				out.encodeLong(o.getControlBits());
+			}
+			ControlBitsSignal read(Reader in) throws IOException {
+				int id = in.decodeInt();
+				return new ControlBitsSignal(id, in.decodeLong());
+			}
+		},
+		new Codec<MovementOverrideSignal>(MovementOverrideSignal.class) {
+			void write(Writer out, MovementOverrideSignal o) throws IOException {
+				out.encodeInt(o.getRobotID());
+				out.encode(o.getNewLoc());
+			}
+			MovementOverrideSignal read(Reader in) throws IOException, ClassNotFoundException {
+				int id = in.decodeInt();
+				return new MovementOverrideSignal(id, (MapLocation) in.decode());
+			}
+		},
+		new Codec<MovementSignal>(MovementSignal.class) {
+			void write(Writer out, MovementSignal o) throws IOException {
+				out.encodeInt(o.getRobotID());
+				out.encodeLocation(o.getNewLoc());
+				// the delay and the direction of the move share a varint
+				out.encodeInt((o.getDelay() << 1) | (o.isMovingForward() ? 1 : 0));
+			}
+			MovementSignal read(Reader in) throws IOException {
+				int id = in.decodeInt();
+				MapLocation loc = in.decodeLocation();
+				int move = in.decodeInt();
+				return new MovementSignal(id, loc, (move & 1) != 0, move >> 1);
+			}
+		},
+		new Codec<EnergonChangeSignal>(EnergonChangeSignal.class) {
+			void write(Writer out, EnergonChangeSignal o) throws IOException {
+				out.encodeIDs(o.getRobotIDs());
+				out.encodeDoubles(o.getEnergon());
+			}
+			EnergonChangeSignal read(Reader in) throws IOException {
+				int[] ids = in.decodeIDs();
+				return new EnergonChangeSignal(ids, in.decodeDoubles());
+			}
+		},
+		new Codec<ShieldChangeSignal>(ShieldChangeSignal.class) {
+			void write(Writer out, ShieldChangeSignal o) throws IOException {
+				out.encodeIDs(o.getRobotIDs());
+				out.encodeDoubles(o.getShield());
+			}
+			ShieldChangeSignal read(Reader in) throws IOException {
+				int[] ids = in.decodeIDs();
+				return new ShieldChangeSignal(ids, in.decodeDoubles());
+			}
+		},
+		new Codec<BytecodesUsedSignal>(BytecodesUsedSignal.class) {
+			void write(Writer out, BytecodesUsedSignal o) throws IOException {
+				out.encodeIDs(o.getRobotIDs());
+				out.encodeInts(o.getNumBytecodes());
+			}
+			BytecodesUsedSignal read(Reader in) throws IOException {
+				int[] ids = in.decodeIDs();
+				return new BytecodesUsedSignal(ids, in.decodeInts());
+			}
+		},
+	};
+
+	private static final Map<Class<?>, Codec<?>> codecs = new HashMap<Class<?>, Codec<?>>();
+	static {
+		for (Codec<?> codec : CODECS) {
+			codecs.put(codec.type, codec);
+		}
+	}
+
+	private static byte kindOf(Class<?> cls) {
+		if (cls == String.class) {
+			return KIND_STRING;
+		}
+		if (cls.isEnum()) {
+			return KIND_ENUM;
+		}
+		if (cls == MapLocation.class) {
+			return KIND_LOCATION;
+		}
+		if (cls.isArray()) {
+			return KIND_ARRAY;
+		}
+		if (codecs.containsKey(cls)) {
+			return KIND_CODEC;
+		}
+		return KIND_SERIALIZED;
+	}
+
+	/**
+	 * Writes objects in the compact encoding.
+	 */
+	public static final class Writer extends DataOutputStream implements ObjectOutput {
+
+		private final Map<Class<?>, Integer> classIds = new HashMap<Class<?>, Integer>();
+		private final List<Byte> classKinds = new ArrayList<Byte>();
+
+		// the embedded object stream for everything without a codec; the
+		// bytes of each object are copied out of blob as they are written
+		private final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+		private ObjectOutputStream blobs = null;
+
+		public Writer(OutputStream os) throws IOException {
+			super(new BufferedOutputStream(os));
+			writeInt(MAGIC);
+			writeInt(VERSION);
+		}
+
+		public void writeObject(Object o) throws IOException {
+			encode(o);
+			if (blobs != null) {
+				// don't hold on to this object's graph, or grow the handle
+				// table for the whole match
+				blobs.reset();
+			}
+		}
+
+		/**
+		 * Writes a value, which may be null, of any class.
+		 */
+		void encode(Object o) throws IOException {
+			if (o == null) {
+				writeVarInt(this, CODE_NULL);
+				return;
+			}
+			Class<?> cls = (o instanceof Enum ? ((Enum<?>) o).getDeclaringClass() : o.getClass());
+			Integer id = classIds.get(cls);
+			if (id == null) {
+				id = defineClass(cls);
+			}
+			writeVarInt(this, FIRST_CLASS + id);
+			switch (classKinds.get(id)) {
+			case KIND_CODEC:
+				codecs.get(cls).writeObject(this, o);
+				break;
+			case KIND_STRING:
+				byte[] utf = ((String) o).getBytes("UTF-8");
+				writeVarInt(this, utf.length);
+				write(utf);
+				break;
+			case KIND_ENUM:
+				writeVarInt(this, ((Enum<?>) o).ordinal());
+				break;
+			case KIND_LOCATION:
+				encodeLocation((MapLocation) o);
+				break;
+			case KIND_ARRAY:
+				writeArray(o);
+				break;
+			default:
+				if (blobs == null) {
+					blobs = new ObjectOutputStream(blob);
+				}
+				blobs.writeObject(o);
+				blobs.flush();
+				writeVarInt(this, blob.size());
+				blob.writeTo(this);
+				blob.reset();
+			}
+		}
+
+		void encodeInt(int v) throws IOException {
+			writeVarInt(this, zigzag(v));
+		}
+
+		void encodeLong(long v) throws IOException {
+			writeVarLong(this, zigzagLong(v));
+		}
+
+		void encodeLocation(MapLocation loc) throws IOException {
+			writeVarInt(this, zigzag(loc.x));
+			writeVarInt(this, zigzag(loc.y));
+		}
+
+		/**
+		 * Writes an int array as differences of consecutive elements, which
+		 * are small for the robot IDs of a signal.
+		 */
+		void encodeIDs(int[] v) throws IOException {
+			writeVarInt(this, v.length);
+			int prev = 0;
+			for (int x : v) {
+				writeVarInt(this, zigzag(x - prev));
+				prev = x;
+			}
+		}
+
+		void encodeInts(int[] v) throws IOException {
+			writeVarInt(this, v.length);
+			for (int x : v) {
+				writeVarInt(this, zigzag(x));
+			}
+		}
+
+		/**
+		 * Writes a double array, as integers if every element is a whole
+		 * number.
+		 */
+		void encodeDoubles(double[] v) throws IOException {
+			writeVarInt(this, v.length);
+			boolean whole = true;
+			for (double x : v) {
+				if (x != (int) x || (x == 0 && 1 / x < 0)) {
+					whole = false;
+					break;
+				}
+			}
+			writeBoolean(whole);
+			for (double x : v) {
+				if (whole) {
+					writeVarInt(this, zigzag((int) x));
+				}
+				else {
+					writeDouble(x);
+				}
+			}
+		}
+
+		private int defineClass(Class<?> cls) throws IOException {
+			byte kind = kindOf(cls);
+			writeVarInt(this, CODE_DEFINE);
+			writeUTF(cls.getName());
+			writeByte(kind);
+			int id = classKinds.size();
+			classIds.put(cls, id);
+			classKinds.add(kind);
+			return id;
+		}
+
+		private void writeArray(Object a) throws IOException {
+			if (a instanceof int[]) {
+				encodeIDs((int[]) a);
+			}
+			else if (a instanceof double[]) {
+				encodeDoubles((double[]) a);
+			}
+			else if (a instanceof long[]) {
+				long[] v = (long[]) a;
+				writeVarInt(this, v.length);
+				for (long x : v) {
+					writeVarLong(this, zigzagLong(x));
+				}
+			}
+			else if (a instanceof float[]) {
+				float[] v = (float[]) a;
+				writeVarInt(this, v.length);
+				for (float x : v) {
+					writeFloat(x);
+				}
+			}
+			else if (a instanceof boolean[]) {
+				boolean[] v = (boolean[]) a;
+				writeVarInt(this, v.length);
+				for (boolean x : v) {
+					writeBoolean(x);
+				}
+			}
+			else if (a instanceof byte[]) {
+				byte[] v = (byte[]) a;
+				writeVarInt(this, v.length);
+				write(v);
+			}
+			else if (a instanceof short[]) {
+				short[] v = (short[]) a;
+				writeVarInt(this, v.length);
+				for (short x : v) {
+					writeVarInt(this, zigzag(x));
+				}
+			}
+			else if (a instanceof char[]) {
+				char[] v = (char[]) a;
+				writeVarInt(this, v.length);
+				for (char x : v) {
+					writeVarInt(this, x);
+				}
+			}
+			else {
+				Object[] v = (Object[]) a;
+				writeVarInt(this, v.length);
+				for (Object x : v) {
+					encode(x);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Reads objects in the compact encoding.
+	 */
+	public static final class Reader extends DataInputStream implements ObjectInput {
+
+		private final List<Class<?>> classes = new ArrayList<Class<?>>();
+		private final List<Byte> classKinds = new ArrayList<Byte>();
+
+		// the embedded object stream, fed one object's bytes at a time
+		private final BlobInput blob = new BlobInput();
+		private ObjectInputStream blobs = null;
+
+		/**
+		 * @throws IOException if the stream doesn't start with the compact
+		 * encoding's header
+		 */
+		public Reader(InputStream is) throws IOException {
+			super(is instanceof BufferedInputStream ? is : new BufferedInputStream(is));
+			if (readInt() != MAGIC) {
+				throw new StreamCorruptedException("Not a compact match stream");
+			}
+			int version = readInt();
+			if (version != VERSION) {
+				throw new StreamCorruptedException("Unsupported compact match stream version " + version);
+			}
+		}
+
+		public Object readObject() throws IOException, ClassNotFoundException {
+			return decode();
+		}
+
+		/**
+		 * Reads a value written by Writer.encode.
+		 */
+		Object decode() throws IOException, ClassNotFoundException {
+			int code = readVarInt(this);
+			while (code == CODE_DEFINE) {
+				readClass();
+				code = readVarInt(this);
+			}
+			if (code == CODE_NULL) {
+				return null;
+			}
+			int id = code - FIRST_CLASS;
+			if (id >= classes.size()) {
+				throw new StreamCorruptedException("Undefined class " + id);
+			}
+			Class<?> cls = classes.get(id);
+			switch (classKinds.get(id)) {
+			case KIND_CODEC:
+				return codecs.get(cls).read(this);
+			case KIND_STRING:
+				byte[] utf = new byte[readVarInt(this)];
+				readFully(utf);
+				return new String(utf, "UTF-8");
+			case KIND_ENUM:
+				return cls.getEnumConstants()[readVarInt(this)];
+			case KIND_LOCATION:
+				return decodeLocation();
+			case KIND_ARRAY:
+				return readArray(cls);
+			default:
+				blob.remaining = readVarInt(this);
+				if (blobs == null) {
+					blobs = new ObjectInputStream(blob);
+				}
+				Object o = blobs.readObject();
+				if (blob.remaining != 0) {
+					throw new StreamCorruptedException("Serialized object of " + cls.getName()
+					                                   + " has " + blob.remaining + " extra bytes");
+				}
+				return o;
+			}
+		}
+
+		int decodeInt() throws IOException {
+			return unzigzag(readVarInt(this));
+		}
+
+		long decodeLong() throws IOException {
+			return unzigzagLong(readVarLong(this));
+		}
+
+		MapLocation decodeLocation() throws IOException {
+			int x = unzigzag(readVarInt(this));
+			return new MapLocation(x, unzigzag(readVarInt(this)));
+		}
+
+		int[] decodeIDs() throws IOException {
+			int[] v = new int[readVarInt(this)];
+			int prev = 0;
+			for (int i = 0; i < v.length; i++) {
+				prev += unzigzag(readVarInt(this));
+				v[i] = prev;
+			}
+			return v;
+		}
+
+		int[] decodeInts() throws IOException {
+			int[] v = new int[readVarInt(this)];
+			for (int i = 0; i < v.length; i++) {
+				v[i] = unzigzag(readVarInt(this));
+			}
+			return v;
+		}
+
+		double[] decodeDoubles() throws IOException {
+			double[] v = new double[readVarInt(this)];
+			boolean whole = readBoolean();
+			for (int i = 0; i < v.length; i++) {
+				v[i] = (whole ? unzigzag(readVarInt(this)) : readDouble());
+			}
+			return v;
+		}
+
+		private void readClass() throws IOException, ClassNotFoundException {
+			String name = readUTF();
+			byte kind = readByte();
+			Class<?> cls = Class.forName(name, false, SignalCodec.class.getClassLoader());
+			if (kind == KIND_CODEC && !codecs.containsKey(cls)) {
+				throw new InvalidClassException(name, "no codec for this class");
+			}
+			classes.add(cls);
+			classKinds.add(kind);
+		}
+
+		/**
+		 * The bytes of the current serialized object, so the embedded object
+		 * stream can't read past them.
+		 */
+		private final class BlobInput extends InputStream {
+
+			int remaining = 0;
+
+			public int read() throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				remaining--;
+				return Reader.this.readUnsignedByte();
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+				if (remaining <= 0) {
+					return -1;
+				}
+				int n = Reader.this.read(b, off, Math.min(len, remaining));
+				if (n > 0) {
+					remaining -= n;
+				}
+				return n;
+			}
+
+			public int available() throws IOException {
+				return Math.min(remaining, Reader.this.available());
+			}
+		}
+
+		private Object readArray(Class<?> cls) throws IOException, ClassNotFoundException {
+			Class<?> component = cls.getComponentType();
+			if (component == int.class) {
+				return decodeIDs();
+			}
+			if (component == double.class) {
+				return decodeDoubles();
+			}
+			int length = readVarInt(this);
+			if (component == long.class) {
+				long[] v = new long[length];
+				for (int i = 0; i < length; i++) {
+					v[i] = unzigzagLong(readVarLong(this));
+				}
+				return v;
+			}
+			if (component == float.class) {
+				float[] v = new float[length];
+				for (int i = 0; i < length; i++) {
+					v[i] = readFloat();
+				}
+				return v;
+			}
+			if (component == boolean.class) {
+				boolean[] v = new boolean[length];
+				for (int i = 0; i < length; i++) {
+					v[i] = readBoolean();
+				}
+				return v;
+			}
+			if (component == byte.class) {
+				byte[] v = new byte[length];
+				readFully(v);
+				return v;
+			}
+			if (component == short.class) {
+				short[] v = new short[length];
+				for (int i = 0; i < length; i++) {
+					v[i] = (short) unzigzag(readVarInt(this));
+				}
+				return v;
+			}
+			if (component == char.class) {
+				char[] v = new char[length];
+				for (int i = 0; i < length; i++) {
+					v[i] = (char) readVarInt(this);
+				}
+				return v;
+			}
+			Object[] v = (Object[]) java.lang.reflect.Array.newInstance(component, length);
+			for (int i = 0; i < length; i++) {
+				v[i] = decode();
+			}
+			return v;
+		}
+
+	}
+
+	/**
+	 * @return whether the stream, which must support mark, starts with the
+	 * compact encoding's magic number
+	 */
+	public static boolean isCompact(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = in.read();
+				if (b < 0) {
+					return false;
+				}
+				magic = (magic << 8) | b;
+			}
+			return magic == MAGIC;
+		}
+		finally {
+			in.reset();
+		}
+	}
+
+	private static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int unzigzag(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static long zigzagLong(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long unzigzagLong(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static void writeVarInt(DataOutput out, int v) throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	private static void writeVarLong(DataOutput out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private static long readVarLong(DataInput in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	/**
+	 * Transcodes a match file, as written by the server, into a gzipped
+	 * compact match file.
+	 *
+	 * @param src the path of the .rms file
+	 * @param dst the path of the compact file to write
+	 * @return the number of objects written
+	 */
+	public static int transcode(String src, String dst) throws IOException {
+		StreamClientProxy in = new StreamClientProxy(src);
+		int count = 0;
+		try {
+			Writer out = new Writer(new GZIPOutputStream(new FileOutputStream(dst)));
+			try {
+				while (true) {
+					out.writeObject(in.readObject());
+					count++;
+				}
+			}
+			catch (EOFException e) {
+				// end of the match stream
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+		return count;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: SignalCodec <match.rms> [<match" + EXTENSION + ">]");
+			System.exit(64);
+		}
+		String dst = (args.length > 1 ? args[1] : args[0] + EXTENSION);
+		int count = transcode(args[0], dst);
+		System.out.println("Wrote " + count + " objects to " + dst + " ("
+		                   + new File(args[0]).length() + " -> " + new File(dst).length() + " bytes)");
+	}
+}
@@ -10,19 +10,17 @@ import battlecode.server.proxy.XStreamProxy;
 
 public final class StreamClientProxy implements ClientProxy {
 
-	private ObjectInputStream  ois;
+	private ObjectInput ois;
 	private ObjectOutputStream oos = null;
 
+	/** Reads ahead on background threads instead of ois, or null. */
+	private DecodePipeline pipeline = null;
+
 	private Object peekBuffer;
 	private boolean peeked = false;
 
 	public StreamClientProxy(InputStream stream) throws IOException {
-		if(Config.getGlobalConfig().getBoolean("bc.server.output-xml")) {
-			ois = XStreamProxy.getXStream().createObjectInputStream(stream);	
-		}
-		else {
-			ois = new ObjectInputStream(stream);
-		}
+		ois = openObjectStream(stream, isXml());
 	}
 
 	public StreamClientProxy(InputStream is, ObjectOutputStream os) throws IOException {
@@ -30,8 +28,53 @@ public final class StreamClientProxy implements ClientProxy {
 		oos = os;
 	}
 
+	/**
+	 * Opens a gzipped match file. Unless bc.client.decode-pipeline is false,
+	 * the file is inflated and deserialized ahead on a DecodePipeline.
+	 */
 	public StreamClientProxy(String path) throws IOException {
-		this(new java.util.zip.GZIPInputStream(new FileInputStream(path)));
+		InputStream in = new BufferedInputStream(new FileInputStream(path));
+		if ("false".equalsIgnoreCase(Config.getGlobalConfig().get("bc.client.decode-pipeline"))) {
+			ois = openObjectStream(new java.util.zip.GZIPInputStream(in), isXml());
+		}
+		else {
+			// fail here rather than on the decoder thread if this isn't a match file
+			in.mark(2);
+			if (in.read() != 0x1f || in.read() != 0x8b) {
+				in.close();
+				throw new IOException(path + ": Not in GZIP format");
+			}
+			in.reset();
+			pipeline = new DecodePipeline(in, true, isXml());
+		}
+	}
+
+	/**
+	 * Opens an object stream in the format of the given stream: XStream if
+	 * bc.server.output-xml is set, otherwise the compact SignalCodec encoding
+	 * if the stream starts with its magic number, or Java serialization.
+	 */
+	static ObjectInput openObjectStream(InputStream stream, boolean xml) throws IOException {
+		if (xml) {
+			return XStreamProxy.getXStream().createObjectInputStream(stream);
+		}
+		BufferedInputStream in = new BufferedInputStream(stream);
+		if (SignalCodec.isCompact(in)) {
+			return new SignalCodec.Reader(in);
+		}
+		return new ObjectInputStream(in);
+	}
+
+	private static boolean isXml() {
+		return Config.getGlobalConfig().getBoolean("bc.server.output-xml");
+	}
+
+	/**
+	 * @return the pipeline reading this match, or null if objects are read
+	 * on the calling thread
+	 */
+	public DecodePipeline getPipeline() {
+		return pipeline;
 	}
 
 	public Object readObject() throws EOFException {
@@ -40,6 +83,9 @@ public final class StreamClientProxy implements ClientProxy {
 			//System.out.println("SP " + peekBuffer);
 			return peekBuffer;
 		}
+		if (pipeline != null) {
+			return pipeline.readObject();
+		}
 		try {
 
 			Object o = ois.readObject();
@@ -85,7 +131,16 @@ public final class StreamClientProxy implements ClientProxy {
 		}
 	}
 
-	protected void finalize() throws Throwable {
+	/**
+	 * Closes the match stream, stopping the pipeline reading it if there
+	 * is one.
+	 */
+	public void close() throws IOException {
 		if (ois != null) ois.close();
+		if (pipeline != null) pipeline.close();
+	}
+
+	protected void finalize() throws Throwable {
+		close();
 	}
 }
@@ -41,6 +41,9 @@ public abstract class AbstractAnimation implements Cloneable {
 	protected final int lifetime;
 	protected int roundsToLive;
 
+	// the animation this one was made from by copyOf, or null
+	private AbstractAnimation original = null;
+
 	protected AbstractAnimation(int roundsToLive) {
 		lifetime = roundsToLive;
 		this.roundsToLive = roundsToLive;
@@ -52,6 +55,34 @@ public abstract class AbstractAnimation implements Cloneable {
 
 	public int roundAge() { return lifetime - roundsToLive; }
 
+	public int getRoundsToLive() { return roundsToLive; }
+
 	public abstract Object clone();
 
+	/**
+	 * Copies this animation as it was with the given number of rounds left
+	 * to live. Only the rounds left change during an animation's life, so
+	 * once a copy exists, updateCopy brings it to any other round.
+	 */
+	public AbstractAnimation copyOf(int roundsToLive) {
+		AbstractAnimation copy = (AbstractAnimation) clone();
+		copy.original = this;
+		copy.roundsToLive = roundsToLive;
+		return copy;
+	}
+
+	/**
+	 * Makes this animation the copy of original with the given number of
+	 * rounds left to live, if it was made from original by copyOf.
+	 *
+	 * @return false if this isn't a copy of original
+	 */
+	public boolean updateCopy(AbstractAnimation original, int roundsToLive) {
+		if (this.original != original) {
+			return false;
+		}
+		this.roundsToLive = roundsToLive;
+		return true;
+	}
+
 }
\ No newline at end of file
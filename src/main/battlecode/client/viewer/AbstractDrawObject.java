@@ -37,6 +37,24 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
             this.team = team;
         }
 
+        private static final RobotInfo[][] shared =
+            new RobotInfo[RobotType.values().length][Team.values().length];
+
+        static {
+            for (RobotType type : RobotType.values()) {
+                for (Team team : Team.values()) {
+                    shared[type.ordinal()][team.ordinal()] = new RobotInfo(type, team);
+                }
+            }
+        }
+
+        /**
+         * @return a shared, immutable RobotInfo for the type and team
+         */
+        public static RobotInfo get(RobotType type, Team team) {
+            return shared[type.ordinal()][team.ordinal()];
+        }
+
         @Override
         public boolean equals(Object obj) {
             return (obj instanceof RobotInfo
@@ -51,7 +69,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
     }
 
     public AbstractDrawObject(RobotType type, Team team, int id) {
-        info = new RobotInfo(type, team);
+        info = RobotInfo.get(type, team);
 		robotID = id;
 		hats = "";
     }
@@ -89,6 +107,108 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
         updateDrawLoc();
     }
 
+    /**
+     * Saves the state that the copy constructor would copy, plus
+     * maxEnergon, into the given slot of a keyframe's robot store.
+     * Subclasses with more state override this and use the extra columns.
+     */
+    protected void writeState(RobotStateStore store, int slot) {
+        RobotStateStore.Chunk c = store.chunk(slot);
+        int i = RobotStateStore.index(slot);
+        c.ids[i] = robotID;
+        c.types[i] = (byte) info.type.ordinal();
+        c.teams[i] = (byte) info.team.ordinal();
+        c.locs[i] = loc;
+        c.dirs[i] = RobotStateStore.ordinal(dir);
+        c.energon[i] = energon;
+        c.shields[i] = shields;
+        c.flux[i] = flux;
+        c.maxEnergon[i] = maxEnergon;
+        c.moving[i] = moving;
+        c.targetLocs[i] = targetLoc;
+        c.broadcast[i] = broadcast;
+        c.controlBits[i] = controlBits;
+        c.bytecodesUsed[i] = bytecodesUsed;
+        for (int k = 0; k < GameConstants.NUMBER_OF_INDICATOR_STRINGS; k++) {
+            c.indicatorStrings[RobotStateStore.stringIndex(i, k)] = indicatorStrings[k];
+        }
+        c.turnedOn[i] = turnedOn;
+        c.loaded[i] = loaded;
+        c.regen[i] = regen;
+        c.actionActions[i] = RobotStateStore.ordinal(actionAction);
+        c.totalActionRounds[i] = totalActionRounds;
+        c.roundsUntilActionIdle[i] = roundsUntilActionIdle;
+        c.hats[i] = hats;
+        // the animation itself goes on changing, but only its rounds to
+        // live, so it is saved by reference along with them
+        for (int t = 0; t < RobotStateStore.animationTypes.length; t++) {
+            Animation anim = animations.get(RobotStateStore.animationTypes[t]);
+            int k = RobotStateStore.animationIndex(i, t);
+            c.animations[k] = anim;
+            c.animationRounds[k] = (anim == null ? 0 : anim.getRoundsToLive());
+        }
+    }
+
+    /**
+     * Restores the state saved by writeState. The result is the same as
+     * that of the copy constructor, so this object may be reused for a
+     * robot of a different type or team.
+     */
+    @SuppressWarnings("unchecked")
+    protected void readState(RobotStateStore store, int slot) {
+        RobotStateStore.Chunk c = store.chunk(slot);
+        int i = RobotStateStore.index(slot);
+        robotID = c.ids[i];
+        info = RobotInfo.get(RobotStateStore.type(c.types[i]),
+                            RobotStateStore.team(c.teams[i]));
+        loc = c.locs[i];
+        dir = RobotStateStore.direction(c.dirs[i]);
+        energon = c.energon[i];
+        shields = c.shields[i];
+        flux = c.flux[i];
+        maxEnergon = c.maxEnergon[i];
+        moving = c.moving[i];
+        targetLoc = c.targetLocs[i];
+        broadcast = c.broadcast[i];
+        controlBits = c.controlBits[i];
+        bytecodesUsed = c.bytecodesUsed[i];
+        for (int k = 0; k < GameConstants.NUMBER_OF_INDICATOR_STRINGS; k++) {
+            indicatorStrings[k] = c.indicatorStrings[RobotStateStore.stringIndex(i, k)];
+        }
+        turnedOn = c.turnedOn[i];
+        loaded = c.loaded[i];
+        regen = c.regen[i];
+        actionAction = RobotStateStore.actionType(c.actionActions[i]);
+        totalActionRounds = c.totalActionRounds[i];
+        roundsUntilActionIdle = c.roundsUntilActionIdle[i];
+        hats = c.hats[i];
+
+        // not copied by the copy constructor either
+        attackAction = null;
+        movementAction = null;
+        roundsUntilAttackIdle = 0;
+        roundsUntilMovementIdle = 0;
+        attackDir = null;
+
+        // an object that is restored from the same keyframe again and again
+        // already has copies of its animations, and only winds them back
+        for (int t = 0; t < RobotStateStore.animationTypes.length; t++) {
+            AbstractAnimation.AnimationType type = RobotStateStore.animationTypes[t];
+            int k = RobotStateStore.animationIndex(i, t);
+            AbstractAnimation saved = c.animations[k];
+            if (saved == null) {
+                animations.remove(type);
+                continue;
+            }
+            Animation anim = animations.get(type);
+            if (anim == null || !anim.updateCopy(saved, c.animationRounds[k])) {
+                animations.put(type, (Animation) saved.copyOf(c.animationRounds[k]));
+            }
+        }
+
+        updateDrawLoc();
+    }
+
     public abstract Animation createTeleportAnim(MapLocation src, MapLocation teleportLoc);
 
     public abstract Animation createDeathExplosionAnim(boolean isArchon);
@@ -258,7 +378,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
 	}
 
     public void setTeam(Team team) {
-        info = new RobotInfo(info.type, team);
+        info = RobotInfo.get(info.type, team);
     }
 
     public void setString(int index, String newString) {
@@ -290,7 +410,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
         movementAction = ActionType.TRANSFORMING;
         attackAction = ActionType.TRANSFORMING;
         //roundsUntilIdle = type.wakeDelay();
-        info = new RobotInfo(type, info.team);
+        info = RobotInfo.get(type, info.team);
         maxEnergon = type.maxHealth;
     }
 
@@ -375,6 +495,11 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
         if (roundsUntilActionIdle > 0)
         	roundsUntilActionIdle--;
 
+        if (animations.isEmpty()) {
+            // most robots have no animations, so skip the iterator
+            return;
+        }
+
         Iterator<Map.Entry<AbstractAnimation.AnimationType, Animation>> it = animations.entrySet().iterator();
         Map.Entry<AbstractAnimation.AnimationType, Animation> entry;
         Animation mortarExplosionAnim = null;
@@ -7,6 +7,8 @@ import battlecode.common.MapLocation;
 import battlecode.common.RobotType;
 import battlecode.common.Team;
 import battlecode.common.Upgrade;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
 import battlecode.serial.RoundStats;
 import battlecode.world.GameMap;
 import battlecode.world.InternalRobot;
@@ -18,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,11 +29,14 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   protected abstract DrawObject createDrawObject(RobotType type, Team team, int id);
 
   protected abstract DrawObject createDrawObject(DrawObject o);
-  protected Map<Integer, DrawObject> groundUnits;
-  protected Map<Integer, DrawObject> airUnits;
+  protected RobotTable<DrawObject> groundUnits;
+  protected RobotTable<DrawObject> airUnits;
+  /** The units of groundUnits and airUnits by location. */
+  protected RobotGrid<DrawObject> robotGrid = new RobotGrid<DrawObject>();
   protected Map<Integer, FluxDepositState> fluxDeposits;
   protected Set<MapLocation> encampments;
-  protected double[] teamHP = new double[2];
+  /** Robot counts, energon, bytecodes and resources by team. */
+  protected final TeamAggregates aggregates = new TeamAggregates();
 //	protected Map<Team, List<DrawObject>> archons;
   protected Map<Team, DrawObject> hqs;
   protected int [] coreIDs = new int [2];
@@ -40,7 +46,6 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   protected GameMap gameMap;
   protected int currentRound;
   protected RoundStats stats = null;
-  protected double[] teamResources = new double[2];
   protected double[][] researchProgress = new double[2][5];
   public int[][] neutralsDensity = new int[2][2];
   public int[][] neutralsTeam = new int[2][2];
@@ -95,77 +100,392 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     }
   }
 
+  /** The robots of a keyframe made by freezeStateFrom, or null. */
+  private RobotStateStore frozenRobots = null;
+  // the robot tables replaced by the last restoreRobots, for reuse
+  private RobotTable<DrawObject> spareGroundUnits = null;
+  private RobotTable<DrawObject> spareAirUnits = null;
+  // the robots freezeStateFrom has written so far
+  private RobotTable<DrawObject> writtenUnits = null;
+
   private Map<MapLocation, List<MapLocation>> neighbors = null;
   private Map<MapLocation, Team> nodeTeams = new HashMap<MapLocation,Team>();
   protected List<Link> links = new ArrayList<Link>();
 
 
+  // codes of the signal classes that dispatch calls the visitors of directly
+  private static final int ATTACK = 1;
+  private static final int HAT = 2;
+  private static final int SHIELD = 3;
+  private static final int BROADCAST = 4;
+  private static final int DEATH = 5;
+  private static final int ENERGON_CHANGE = 6;
+  private static final int SHIELD_CHANGE = 7;
+  private static final int FLUX_CHANGE = 8;
+  private static final int RESEARCH_CHANGE = 9;
+  private static final int TRANSFER_FLUX = 10;
+  private static final int INDICATOR_STRING = 11;
+  private static final int CONTROL_BITS = 12;
+  private static final int MOVEMENT_OVERRIDE = 13;
+  private static final int MOVEMENT = 14;
+  private static final int MINE = 15;
+  private static final int MINELAYER = 16;
+  private static final int CAPTURE = 17;
+  private static final int SET_DIRECTION = 18;
+  private static final int SPAWN = 19;
+  private static final int BYTECODES_USED = 20;
+  private static final int LOAD = 21;
+  private static final int UNLOAD = 22;
+  private static final int TURN_ON = 23;
+  private static final int REGEN = 24;
+  private static final int TURN_OFF = 25;
+  private static final int NODE_BIRTH = 26;
+  private static final int NEUTRALS_DENSITY = 27;
+  private static final int NEUTRALS_TEAM = 28;
+
+  private static final Map<Class<?>, Integer> signalCodes =
+    new IdentityHashMap<Class<?>, Integer>();
+
+  static {
+    signalCodes.put(AttackSignal.class, ATTACK);
+    signalCodes.put(HatSignal.class, HAT);
+    signalCodes.put(ShieldSignal.class, SHIELD);
+    signalCodes.put(BroadcastSignal.class, BROADCAST);
+    signalCodes.put(DeathSignal.class, DEATH);
+    signalCodes.put(EnergonChangeSignal.class, ENERGON_CHANGE);
+    signalCodes.put(ShieldChangeSignal.class, SHIELD_CHANGE);
+    signalCodes.put(FluxChangeSignal.class, FLUX_CHANGE);
+    signalCodes.put(ResearchChangeSignal.class, RESEARCH_CHANGE);
+    signalCodes.put(TransferFluxSignal.class, TRANSFER_FLUX);
+    signalCodes.put(IndicatorStringSignal.class, INDICATOR_STRING);
+    signalCodes.put(ControlBitsSignal.class, CONTROL_BITS);
+    signalCodes.put(MovementOverrideSignal.class, MOVEMENT_OVERRIDE);
+    signalCodes.put(MovementSignal.class, MOVEMENT);
+    signalCodes.put(MineSignal.class, MINE);
+    signalCodes.put(MinelayerSignal.class, MINELAYER);
+    signalCodes.put(CaptureSignal.class, CAPTURE);
+    signalCodes.put(SetDirectionSignal.class, SET_DIRECTION);
+    signalCodes.put(SpawnSignal.class, SPAWN);
+    signalCodes.put(BytecodesUsedSignal.class, BYTECODES_USED);
+    signalCodes.put(LoadSignal.class, LOAD);
+    signalCodes.put(UnloadSignal.class, UNLOAD);
+    signalCodes.put(TurnOnSignal.class, TURN_ON);
+    signalCodes.put(RegenSignal.class, REGEN);
+    signalCodes.put(TurnOffSignal.class, TURN_OFF);
+    signalCodes.put(NodeBirthSignal.class, NODE_BIRTH);
+    signalCodes.put(NeutralsDensitySignal.class, NEUTRALS_DENSITY);
+    signalCodes.put(NeutralsTeamSignal.class, NEUTRALS_TEAM);
+  }
+
+  /**
+   * Applies a round without the reflective dispatch of Signal.accept. For
+   * the common signals, neither the dispatch nor the visitors allocate.
+   */
+  @Override
+  public synchronized void apply(RoundDelta rd) {
+    Signal[] signals = rd.getSignals();
+    for (int i = 0; i < signals.length; i++) {
+      dispatch(signals[i]);
+    }
+    updateRound();
+  }
+
+  @Override
+  public synchronized void apply(Signal signal) {
+    dispatch(signal);
+  }
+
+  /**
+   * Calls the visitor of the signal's class. Classes without a code here,
+   * such as those only subclasses visit, go through Signal.accept.
+   */
+  protected void dispatch(Signal s) {
+    Integer code = signalCodes.get(s.getClass());
+    switch (code == null ? 0 : code.intValue()) {
+      case ATTACK: visitAttackSignal((AttackSignal) s); break;
+      case HAT: visitHatSignal((HatSignal) s); break;
+      case SHIELD: visitShieldSignal((ShieldSignal) s); break;
+      case BROADCAST: visitBroadcastSignal((BroadcastSignal) s); break;
+      case DEATH: visitDeathSignal((DeathSignal) s); break;
+      case ENERGON_CHANGE: visitEnergonChangeSignal((EnergonChangeSignal) s); break;
+      case SHIELD_CHANGE: visitShieldChangeSignal((ShieldChangeSignal) s); break;
+      case FLUX_CHANGE: visitFluxChangeSignal((FluxChangeSignal) s); break;
+      case RESEARCH_CHANGE: visitResearchChangeSignal((ResearchChangeSignal) s); break;
+      case TRANSFER_FLUX: visitTransferFluxSignal((TransferFluxSignal) s); break;
+      case INDICATOR_STRING: visitIndicatorStringSignal((IndicatorStringSignal) s); break;
+      case CONTROL_BITS: visitControlBitsSignal((ControlBitsSignal) s); break;
+      case MOVEMENT_OVERRIDE: visitMovementOverrideSignal((MovementOverrideSignal) s); break;
+      case MOVEMENT: visitMovementSignal((MovementSignal) s); break;
+      case MINE: visitMineSignal((MineSignal) s); break;
+      case MINELAYER: visitMinelayerSignal((MinelayerSignal) s); break;
+      case CAPTURE: visitCaptureSignal((CaptureSignal) s); break;
+      case SET_DIRECTION: visitSetDirectionSignal((SetDirectionSignal) s); break;
+      case SPAWN: visitSpawnSignal((SpawnSignal) s); break;
+      case BYTECODES_USED: visitBytecodesUsedSignal((BytecodesUsedSignal) s); break;
+      case LOAD: visitLoadSignal((LoadSignal) s); break;
+      case UNLOAD: visitUnloadSignal((UnloadSignal) s); break;
+      case TURN_ON: visitTurnOnSignal((TurnOnSignal) s); break;
+      case REGEN: visitRegenSignal((RegenSignal) s); break;
+      case TURN_OFF: visitTurnOffSignal((TurnOffSignal) s); break;
+      case NODE_BIRTH: visitNodeBirthSignal((NodeBirthSignal) s); break;
+      case NEUTRALS_DENSITY: visitNeutralsDensitySignal((NeutralsDensitySignal) s); break;
+      case NEUTRALS_TEAM: visitNeutralsTeamSignal((NeutralsTeamSignal) s); break;
+      default: s.accept(this);
+    }
+  }
+
   public AbstractDrawState() {
     hqs = new EnumMap<Team, DrawObject>(Team.class);
   }
 
-  protected synchronized void copyStateFrom(AbstractDrawState<DrawObject> src) {
-      groundUnits.clear();
-      for (Map.Entry<Integer, DrawObject> entry : src.groundUnits.entrySet()) {
-        DrawObject copy = createDrawObject(entry.getValue());
-        groundUnits.put(entry.getKey(), copy);
-        tryAddHQ(copy);
+  protected void copyStateFrom(AbstractDrawState<DrawObject> src) {
+    copyStateFrom(src, null);
+  }
+
+  /**
+   * Like copyStateFrom(src), for a state that was last copied from the
+   * keyframe lastKeyFrame, which may be null. When src is a keyframe that
+   * was frozen with lastKeyFrame as its previous keyframe and no robot
+   * has changed since, the robots of this state are left as they are.
+   */
+  protected synchronized void copyStateFrom(AbstractDrawState<DrawObject> src,
+                                            AbstractDrawState<DrawObject> lastKeyFrame) {
+      if (src.frozenRobots != null && lastKeyFrame != null
+          && lastKeyFrame.frozenRobots != null
+          && src.frozenRobots.sharesAllWith(lastKeyFrame.frozenRobots)) {
+        copyWorldFrom(src);
+        return;
       }
-      airUnits.clear();
-      for (Map.Entry<Integer, DrawObject> entry : src.airUnits.entrySet()) {
-        DrawObject copy = createDrawObject(entry.getValue());
-        airUnits.put(entry.getKey(), copy);
+      if (src.frozenRobots != null) {
+        restoreRobots(src.frozenRobots);
+      } else {
+        groundUnits.clear();
+        groundUnits.ensureCapacity(src.groundUnits.size());
+        for (int i = 0, n = src.groundUnits.positions(); i < n; i++) {
+          DrawObject unit = src.groundUnits.valueAt(i);
+          if (unit != null) {
+            DrawObject copy = createDrawObject(unit);
+            groundUnits.put(src.groundUnits.idAt(i), copy);
+            tryAddHQ(copy);
+          }
+        }
+        airUnits.clear();
+        airUnits.ensureCapacity(src.airUnits.size());
+        for (int i = 0, n = src.airUnits.positions(); i < n; i++) {
+          DrawObject unit = src.airUnits.valueAt(i);
+          if (unit != null) {
+            airUnits.put(src.airUnits.idAt(i), createDrawObject(unit));
+          }
+        }
       }
-        
-      mineLocs.clear();
-      mineLocs.putAll(src.mineLocs);
-        
-        
-      fluxDeposits.clear();
-      for (Map.Entry<Integer, FluxDepositState> entry : src.fluxDeposits.entrySet()) {
-        fluxDeposits.put(entry.getKey(), new FluxDepositState(entry.getValue()));
-      }
-      coreIDs = src.coreIDs;
-      stats = src.stats;
+      frozenRobots = null;
+      rebuildRobotGrid();
+      copyWorldFrom(src);
+    }
 
-      nodeTeams = new HashMap<MapLocation,Team>(src.nodeTeams);
-	
-      neighbors = src.neighbors;
+  /**
+   * Copies src into this state, which becomes a keyframe: its robots are
+   * saved into a RobotStateStore instead of being copied object by object.
+   * A keyframe must not be modified or drawn, only copied with
+   * copyStateFrom.
+   */
+  protected void freezeStateFrom(AbstractDrawState<DrawObject> src) {
+    freezeStateFrom(src, null);
+  }
+
+  /**
+   * Like freezeStateFrom(src), but shares the parts of its store whose
+   * robots haven't changed with previousKeyFrame, which may be null.
+   * Every robot that was in previousKeyFrame keeps its slot, so a robot
+   * that changes or dies doesn't stop the robots after it from being
+   * shared. Once too many slots are empty the robots are packed again.
+   */
+  protected synchronized void freezeStateFrom(AbstractDrawState<DrawObject> src,
+                                              AbstractDrawState<DrawObject> previousKeyFrame) {
+    if (frozenRobots == null) {
+      frozenRobots = new RobotStateStore(src.groundUnits.size() + src.airUnits.size());
+    }
+    if (src.frozenRobots != null) {
+      frozenRobots.copyFrom(src.frozenRobots);
+    } else {
+      RobotStateStore previous = (previousKeyFrame == null ? null
+                                  : previousKeyFrame.frozenRobots);
+      frozenRobots.clear();
+      if (previous != null && previous.emptySlots() * 2 <= previous.size()) {
+        if (writtenUnits == null) {
+          writtenUnits = new RobotTable<DrawObject>(previous.size());
+        }
+        for (int slot = 0, n = previous.size(); slot < n; slot++) {
+          int id = previous.getID(slot);
+          DrawObject unit = null;
+          boolean air = false;
+          if (!previous.isEmpty(slot)) {
+            unit = src.groundUnits.get(id);
+            if (unit == null) {
+              unit = src.airUnits.get(id);
+              air = true;
+            }
+          }
+          if (unit == null) {
+            frozenRobots.addEmpty();
+          } else {
+            writeRobot(unit, air);
+            writtenUnits.put(id, unit);
+          }
+          frozenRobots.written(slot, previous);
+        }
+        // the robots born since previousKeyFrame go at the end
+        writeRobots(src.groundUnits, false, previous);
+        writeRobots(src.airUnits, true, previous);
+        writtenUnits.clear();
+      } else {
+        writeRobots(src.groundUnits, false, previous);
+        writeRobots(src.airUnits, true, previous);
+      }
+      frozenRobots.finish(previous);
+    }
+    groundUnits.clear();
+    airUnits.clear();
+    hqs.clear();
+    robotGrid.clear();
+    copyWorldFrom(src);
+  }
+
+  private void writeRobots(RobotTable<DrawObject> units, boolean air,
+                           RobotStateStore previous) {
+    for (int i = 0, n = units.positions(); i < n; i++) {
+      DrawObject unit = units.valueAt(i);
+      if (unit != null
+          && (writtenUnits == null || !writtenUnits.containsKey(units.idAt(i)))) {
+        frozenRobots.written(writeRobot(unit, air), previous);
+      }
+    }
+  }
 
-      links.clear();
-      for(Link l : src.links) {
-        links.add(new Link(l));
+  private int writeRobot(DrawObject unit, boolean air) {
+    int slot = frozenRobots.add();
+    unit.writeState(frozenRobots, slot);
+    frozenRobots.setAir(slot, air);
+    return slot;
+  }
+
+  /**
+   * Replaces the robots of this state with those of a keyframe. Robots
+   * that are in both keep their objects, so restoring a keyframe over a
+   * state of a nearby round allocates little.
+   */
+  private void restoreRobots(RobotStateStore store) {
+    RobotTable<DrawObject> previousGround = groundUnits;
+    RobotTable<DrawObject> previousAir = airUnits;
+    groundUnits = (spareGroundUnits != null ? spareGroundUnits
+                   : new RobotTable<DrawObject>(store.size()));
+    airUnits = (spareAirUnits != null ? spareAirUnits
+                : new RobotTable<DrawObject>());
+    for (int slot = 0, n = store.size(); slot < n; slot++) {
+      if (store.isEmpty(slot)) {
+        continue;
       }
-	
-      if (src.gameMap != null) {
-        gameMap = src.gameMap;
+      int id = store.getID(slot);
+      DrawObject unit = previousGround.remove(id);
+      if (unit == null) {
+        unit = previousAir.remove(id);
+      }
+      if (unit == null) {
+        unit = createDrawObject(store.getType(slot), store.getTeam(slot), id);
       }
+      unit.readState(store, slot);
+      if (store.isAir(slot)) {
+        airUnits.put(id, unit);
+      } else {
+        groundUnits.put(id, unit);
+        tryAddHQ(unit);
+      }
+    }
+    previousGround.clear();
+    previousAir.clear();
+    spareGroundUnits = previousGround;
+    spareAirUnits = previousAir;
+  }
+
+  /**
+   * Puts every unit into a cleared robotGrid, for after the units have been
+   * replaced wholesale.
+   */
+  protected void rebuildRobotGrid() {
+    robotGrid.clear();
+    for (int i = 0, n = groundUnits.positions(); i < n; i++) {
+      DrawObject unit = groundUnits.valueAt(i);
+      if (unit != null) {
+        robotGrid.add(unit);
+      }
+    }
+    for (int i = 0, n = airUnits.positions(); i < n; i++) {
+      DrawObject unit = airUnits.valueAt(i);
+      if (unit != null) {
+        robotGrid.add(unit);
+      }
+    }
+  }
 
-      currentRound = src.currentRound;
-      for (int x=0; x<teamResources.length; x++)
-        teamResources[x] = src.teamResources[x];
-      for (int t = 0; t < researchProgress.length; t++)
-        for (int r = 0; r < researchProgress[t].length; r++)
-          researchProgress[t][r] = src.researchProgress[t][r];
+  private void copyWorldFrom(AbstractDrawState<DrawObject> src) {
+    mineLocs.clear();
+    mineLocs.putAll(src.mineLocs);
+      
+      
+    fluxDeposits.clear();
+    for (Map.Entry<Integer, FluxDepositState> entry : src.fluxDeposits.entrySet()) {
+      fluxDeposits.put(entry.getKey(), new FluxDepositState(entry.getValue()));
+    }
+    coreIDs = src.coreIDs;
+    stats = src.stats;
+
+    nodeTeams = new HashMap<MapLocation,Team>(src.nodeTeams);
+	
+    neighbors = src.neighbors;
 
-      // these are never modified just created by parser
-      neutralsDensity = src.neutralsDensity;
-      neutralsTeam = src.neutralsTeam;
-      neutralsTeamSet = src.neutralsTeamSet;
+    links.clear();
+    for(Link l : src.links) {
+      links.add(new Link(l));
+    }
+	
+    if (src.gameMap != null) {
+      gameMap = src.gameMap;
     }
 
+    currentRound = src.currentRound;
+    aggregates.copyFrom(src.aggregates);
+    for (int t = 0; t < researchProgress.length; t++)
+      for (int r = 0; r < researchProgress[t].length; r++)
+        researchProgress[t][r] = src.researchProgress[t][r];
+
+    // these are never modified just created by parser
+    neutralsDensity = src.neutralsDensity;
+    neutralsTeam = src.neutralsTeam;
+    neutralsTeamSet = src.neutralsTeamSet;
+  }
+
   public DrawObject getHQ(Team t) {
     return hqs.get(t);
   }
 	
+  /**
+   * @return the number of robots of each type, indexed by ordinal. The
+   * array is shared and must not be modified.
+   */
   public int[] getRobotCounts(Team t) {
-    // naive way for now...
-    int[] counts = new int[RobotType.values().length];
-    for (Map.Entry<Integer, DrawObject> e : drawables) {
-      if (e.getValue().getTeam() == t)
-        counts[e.getValue().getType().ordinal()]++;
-    }
-    return counts;
+    return aggregates.getRobotCounts(t);
+  }
+
+  public TeamAggregates getAggregates() {
+    return aggregates;
+  }
+
+  public double getTeamHP(Team t) {
+    return aggregates.getHP(t);
+  }
+
+  public double getTeamResources(Team t) {
+    return aggregates.getResources(t);
   }
 
   public DrawObject getPowerCore(Team t) {
@@ -209,11 +529,89 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
       previous = airUnits.remove(id);
       assert previous != null : "Robot #" + id + " not found";
     }
+    if (previous != null) {
+      robotGrid.remove(previous, previous.getLocation());
+      aggregates.robotRemoved(previous);
+    }
   }
 
   protected void putRobot(int id, DrawObject unit) {
     DrawObject previous = groundUnits.put(id, unit);
     assert previous == null : "Robot #" + id + " already exists";
+    robotGrid.add(unit);
+    aggregates.robotAdded(unit);
+  }
+
+  protected void moveRobot(DrawObject unit, MapLocation loc) {
+    MapLocation from = unit.getLocation();
+    unit.setLocation(loc);
+    robotGrid.move(unit, from, loc);
+  }
+
+  /**
+   * @return the units at the given location
+   */
+  public synchronized List<DrawObject> getRobotsAt(MapLocation loc) {
+    List<DrawObject> found = new ArrayList<DrawObject>();
+    robotGrid.findAt(loc, found);
+    return found;
+  }
+
+  /**
+   * @return the units within the given squared distance of center
+   */
+  public synchronized List<DrawObject> getRobotsNear(MapLocation center, int radiusSquared) {
+    List<DrawObject> found = new ArrayList<DrawObject>();
+    robotGrid.findInRadius(center, radiusSquared, found);
+    return found;
+  }
+
+  /**
+   * @return the units within the given bounds, inclusive
+   */
+  public synchronized List<DrawObject> getRobotsIn(int minX, int minY, int maxX, int maxY) {
+    List<DrawObject> found = new ArrayList<DrawObject>();
+    robotGrid.findInRect(minX, minY, maxX, maxY, found);
+    return found;
+  }
+
+  private final List<DrawObject> hitCandidates = new ArrayList<DrawObject>();
+
+  /**
+   * Finds the unit drawn under the given point in map coordinates, taking
+   * units' movement offsets into account. Units hidden by the render
+   * configuration or in transport aren't found, and air units win over
+   * the ground units they are drawn over.
+   *
+   * @return the unit, or null
+   */
+  protected DrawObject findDrawnRobotAt(float x, float y) {
+    boolean showGround = RenderConfiguration.showGround();
+    boolean showAir = RenderConfiguration.showAir();
+    if (!showGround && !showAir) {
+      return null;
+    }
+    // a unit is drawn at most one square away from its location
+    int cx = (int) Math.floor(x), cy = (int) Math.floor(y);
+    hitCandidates.clear();
+    robotGrid.findInRect(cx - 1, cy - 1, cx + 1, cy + 1, hitCandidates);
+    DrawObject hit = null;
+    boolean hitAir = false;
+    for (int i = 0; i < hitCandidates.size(); i++) {
+      DrawObject obj = hitCandidates.get(i);
+      if (obj.inTransport()
+          || Math.abs(x - obj.getDrawX() - 0.5) >= 0.5
+          || Math.abs(y - obj.getDrawY() - 0.5) >= 0.5) {
+        continue;
+      }
+      boolean air = (airUnits.get(obj.getID()) == obj);
+      if (air ? showAir && (hit == null || !hitAir) : showGround && hit == null) {
+        hit = obj;
+        hitAir = air;
+      }
+    }
+    hitCandidates.clear();
+    return hit;
   }
 
   protected void tryAddHQ(DrawObject hq) {
@@ -236,12 +634,22 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
 
   protected void updateRound() {
     currentRound++;
-    for (Iterator<Map.Entry<Integer, DrawObject>> it = drawables.iterator();
-         it.hasNext();) {
-      DrawObject obj = it.next().getValue();
+    updateUnits(groundUnits);
+    updateUnits(airUnits);
+  }
+
+  // by position rather than with an iterator, so that a round allocates nothing
+  private void updateUnits(RobotTable<DrawObject> units) {
+    for (int i = 0, n = units.positions(); i < n; i++) {
+      DrawObject obj = units.valueAt(i);
+      if (obj == null) {
+        continue;
+      }
       obj.updateRound();
       if (!obj.isAlive()) {
-        it.remove();
+        units.remove(units.idAt(i));
+        robotGrid.remove(obj, obj.getLocation());
+        aggregates.robotRemoved(obj);
         //if (obj.getType() == RobotType.ARCHON) {
         //	(obj.getTeam() == Team.A ? archonsA : archonsB).remove(obj);
         //}
@@ -272,13 +680,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   public void visitDeathSignal(DeathSignal s) {
-    int team = getRobot(s.getObjectID()).getTeam().ordinal();
     DrawObject robot = getRobot(s.getObjectID());
-    if (team < 2) {
-      teamHP[team] -= getRobot(s.getObjectID()).getEnergon();
-    }
-
+    double energon = robot.getEnergon();
     robot.destroyUnit();
+    aggregates.energonChanged(robot, energon);
         
   }
 
@@ -286,12 +691,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     int[] robotIDs = s.getRobotIDs();
     double[] energon = s.getEnergon();
     for (int i = 0; i < robotIDs.length; i++) {
-      int team = getRobot(robotIDs[i]).getTeam().ordinal();
-      if (team < 2)
-        teamHP[team] -= getRobot(robotIDs[i]).getEnergon();
-      getRobot(robotIDs[i]).setEnergon(energon[i]);
-      if (team < 2)
-        teamHP[team] += energon[i];
+      DrawObject robot = getRobot(robotIDs[i]);
+      double previous = robot.getEnergon();
+      robot.setEnergon(energon[i]);
+      aggregates.energonChanged(robot, previous);
     }
   }
     
@@ -315,8 +718,7 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
 //            getRobot(robotIDs[i]).setFlux(flux[i]);
 //        }
 //        teamResources = s.flux;
-    for (int x=0; x<teamResources.length; x++)
-      teamResources[x] = s.flux[x];
+    aggregates.setResources(s.flux);
   }
 
   public void visitResearchChangeSignal(ResearchChangeSignal s) {
@@ -344,7 +746,7 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   public void visitMovementOverrideSignal(MovementOverrideSignal s) {
-    getRobot(s.getRobotID()).setLocation(s.getNewLoc());
+    moveRobot(getRobot(s.getRobotID()), s.getNewLoc());
         
   }
 
@@ -353,7 +755,7 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     boolean teleported = !obj.loc.isAdjacentTo(s.getNewLoc());
     //TODO: this should probably be from a teleported signal
     MapLocation oldloc = obj.loc;
-    obj.setLocation(s.getNewLoc());
+    moveRobot(obj, s.getNewLoc());
     if (teleported) {
       obj.setTeleport(obj.loc, s.getNewLoc());
     } else {
@@ -400,10 +802,6 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
         
     putRobot(s.getRobotID(), spawn);
     tryAddHQ(spawn);
-    int team = getRobot(s.getRobotID()).getTeam().ordinal();
-    if (team < 2) {
-      teamHP[team] += getRobot(s.getRobotID()).getEnergon();
-    }
 		
     return spawn;
   }
@@ -417,7 +815,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     int[] robotIDs = s.getRobotIDs();
     int[] bytecodes = s.getNumBytecodes();
     for (int i = 0; i < robotIDs.length; i++) {
-      getRobot(robotIDs[i]).setBytecodesUsed(bytecodes[i]);
+      DrawObject robot = getRobot(robotIDs[i]);
+      int previous = robot.getBytecodesUsed();
+      robot.setBytecodesUsed(bytecodes[i]);
+      aggregates.bytecodesChanged(robot, previous);
     }
         
   }
@@ -427,7 +828,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   public void visitUnloadSignal(UnloadSignal s) {
-    getRobot(s.passengerID).unload(s.unloadLoc);
+    DrawObject passenger = getRobot(s.passengerID);
+    MapLocation from = passenger.getLocation();
+    passenger.unload(s.unloadLoc);
+    robotGrid.move(passenger, from, s.unloadLoc);
   }
 
   public void visitTurnOnSignal(TurnOnSignal s) {
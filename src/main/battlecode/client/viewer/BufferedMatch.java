@@ -6,6 +6,7 @@ import java.util.*;
 import battlecode.client.*;
 import battlecode.serial.*;
 import battlecode.serial.notification.*;
+import battlecode.server.Config;
 import battlecode.engine.signal.Signal;
 import battlecode.world.GameMap;
 
@@ -22,8 +23,8 @@ public final class BufferedMatch {
 	public String teamB = null;
 	private String[] mapNames = null;
 
-	private List<RoundDelta> deltas = new Vector<RoundDelta>();
-	private List<RoundStats> stats = new Vector<RoundStats>();
+	private RoundStore<RoundDelta> deltas = createRoundStore(RoundDelta.class);
+	private RoundStore<RoundStats> stats = createRoundStore(RoundStats.class);
 	private List<Signal> currentBreak = null;
 	private boolean paused = false;
 
@@ -31,6 +32,7 @@ public final class BufferedMatch {
 	private List<MatchListener> matchPausedListeners;
 
 	private boolean earlyTermination = false;
+	private volatile boolean ended = false;
 
 	public BufferedMatch(ClientProxy proxy) {
 		assert proxy != null;
@@ -42,6 +44,30 @@ public final class BufferedMatch {
 		(new Thread() { public void run() { readMatch(); } }).start();
 	}
 
+	/**
+	 * Creates the round store configured by bc.client.round-cache, the number
+	 * of rounds to keep on the heap. If it is unset or zero, every round is
+	 * kept on the heap.
+	 */
+	private static <T> RoundStore<T> createRoundStore(Class<T> type) {
+		String window = Config.getGlobalConfig().get("bc.client.round-cache");
+		if (window != null && !window.trim().equals("")) {
+			int rounds = Integer.parseInt(window.trim());
+			if (rounds > 0) {
+				return new SpillingRoundStore<T>(type, rounds);
+			}
+		}
+		return new HeapRoundStore<T>(type);
+	}
+
+	public RoundStore<RoundDelta> getDeltaStore() {
+		return deltas;
+	}
+
+	public RoundStore<RoundStats> getStatsStore() {
+		return stats;
+	}
+
 	public MatchHeader getHeader() {
 		return header;
 	}
@@ -51,9 +77,7 @@ public final class BufferedMatch {
 	}
   
 	public RoundDelta getRound(int round) {
-		if(round < deltas.size())
-			return deltas.get(round);
-		return null;
+		return deltas.get(round);
 	}
 
 	public RoundStats getRoundStats(int round) {
@@ -81,6 +105,7 @@ public final class BufferedMatch {
 			}
 			catch (EOFException e) {
 				//System.err.println("Unexpected end of line at match header");
+				endOfStream();
 				return;
 			}
 		} while (!(obj instanceof MatchHeader));
@@ -98,6 +123,7 @@ public final class BufferedMatch {
 			}
 			catch (EOFException e) {
 				System.err.println("Unexpected end of line at round " + deltas.size());
+				endOfStream();
 				return;
 			}
 			if (obj instanceof Notification) {
@@ -112,6 +138,9 @@ public final class BufferedMatch {
 			else if (obj instanceof Signal[]) {
 				handleSignals((Signal[]) obj);
 			}
+			else if (obj instanceof IndexedMatchFile.Chunk) {
+				handleChunk((IndexedMatchFile.Chunk) obj);
+			}
 			else if (obj instanceof ExtensibleMetadata) {
 				handleExtensibleMetadata((ExtensibleMetadata) obj);
 			}
@@ -129,6 +158,7 @@ public final class BufferedMatch {
 		}
 		synchronized(this) {
 			footer = (MatchFooter) obj;
+			ended = true;
 			for (MatchListener listener: matchListeners) {
 				listener.footerReceived(this);
 			}
@@ -138,6 +168,16 @@ public final class BufferedMatch {
 		System.out.println("Stop buffering match");
 	}
 
+	/**
+	 * Marks a stream that ended without a footer, and wakes the match
+	 * listeners so that those waiting for more rounds see that none will
+	 * come.
+	 */
+	private void endOfStream() {
+		ended = true;
+		fireRoundsReceived();
+	}
+
 	private void handleNotification(Notification n) {
 		assert (n instanceof PauseNotification);
 		paused = true;
@@ -168,10 +208,29 @@ public final class BufferedMatch {
 				deltas.add(new RoundDelta(merged));
 			}
 		}
+		fireRoundsReceived();
+	}
+
+	private void handleChunk(IndexedMatchFile.Chunk chunk) {
+		if (chunk.getKind() == IndexedMatchFile.KIND_DELTA) {
+			if (currentBreak == null) {
+				paused = false;
+				deltas.addLazy(chunk);
+				fireRoundsReceived();
+			}
+			else {
+				handleRoundDelta((RoundDelta) chunk.load());
+			}
+		}
+		else if (chunk.getKind() == IndexedMatchFile.KIND_STATS) {
+			stats.addLazy(chunk);
+			fireRoundsReceived();
+		}
 	}
 
 	private void handleRoundStats(RoundStats roundStats) {
 		stats.add(roundStats);
+		fireRoundsReceived();
 	}
 
 	private void handleSignals(Signal[] signals) {
@@ -181,6 +240,19 @@ public final class BufferedMatch {
 		for (int i = 0; i < signals.length; i++) {
 			currentBreak.add(signals[i]);
 		}
+		fireRoundsReceived();
+	}
+
+	/**
+	 * Tells the match listeners that new rounds (or debug signals) are
+	 * available, so that they don't need to poll.
+	 */
+	private synchronized void fireRoundsReceived() {
+		if (matchListeners != null) {
+			for (MatchListener listener: matchListeners) {
+				listener.roundsReceived(this);
+			}
+		}
 	}
 
 	private void handleExtensibleMetadata(ExtensibleMetadata metadata) {
@@ -205,6 +277,13 @@ public final class BufferedMatch {
 		return (footer != null);
 	}
 
+	/**
+	 * @return whether the match stream has ended, with or without a footer
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
 	public synchronized void addMatchListener(MatchListener listener) {
 		if (header != null) {
 			listener.headerReceived(this);
@@ -224,6 +303,10 @@ public final class BufferedMatch {
 		}
 	}
 
+	public ClientProxy getProxy() {
+		return proxy;
+	}
+
 	public DebugProxy getDebugProxy() {
 		if (proxy.isDebuggingAvailable()) {
 			return proxy;
@@ -13,6 +13,10 @@ import java.util.*;
 import javax.swing.*;
 import javax.swing.event.*;
 
+import battlecode.client.ClientProxy;
+import battlecode.client.LocalProxy;
+import battlecode.client.RemoteClientProxy;
+
 public class ControlPanel extends JPanel
         implements ActionListener, ChangeListener, Controller {
 
@@ -33,6 +37,17 @@ public class ControlPanel extends JPanel
     private final ImageIcon playIcon;
     private final ImageIcon pauseIcon;
     private InfoPanel infoPanel = null;
+    // throughput of a remote stream or the hand-off queue of a local match,
+    // hidden for match files
+    private JLabel streamLabel;
+    private RemoteClientProxy remote = null;
+    private LocalProxy local = null;
+    private javax.swing.Timer streamTimer = new javax.swing.Timer(1000, new ActionListener() {
+
+        public void actionPerformed(ActionEvent e) {
+            updateStreamLabel();
+        }
+    });
     private Observer timelineObserver = new Observer() {
 
         public void update(Observable o, Object obj) {
@@ -111,6 +126,9 @@ public class ControlPanel extends JPanel
         setSliderValue(0);
         slider.setEnabled(false);
         infoPanel = new InfoPanel();
+        streamLabel = new JLabel();
+        streamLabel.setHorizontalAlignment(javax.swing.SwingConstants.CENTER);
+        streamLabel.setVisible(false);
 
         setAlignmentX(CENTER_ALIGNMENT);
 
@@ -136,6 +154,8 @@ public class ControlPanel extends JPanel
         add(panel, gbc);
         gbc.gridy = 2;
         add(slider, gbc);
+        gbc.gridy = 3;
+        add(streamLabel, gbc);
         gbc.gridx = 1;
         gbc.gridy = 0;
         gbc.gridheight = 3;
@@ -210,6 +230,15 @@ public class ControlPanel extends JPanel
         this.player = player;
         GameStateTimeline gst = player.getTimeline();
         gst.addObserver(timelineObserver);
+        ClientProxy proxy = gst.getMatch().getProxy();
+        remote = (proxy instanceof RemoteClientProxy ? (RemoteClientProxy) proxy : null);
+        local = (proxy instanceof LocalProxy ? (LocalProxy) proxy : null);
+        streamLabel.setVisible(remote != null || local != null);
+        if (remote != null || local != null) {
+            streamTimer.start();
+        } else {
+            streamTimer.stop();
+        }
         gst.getMatch().addMatchListener(new MatchListener() {
 
             public void headerReceived(BufferedMatch match) {
@@ -228,6 +257,26 @@ public class ControlPanel extends JPanel
 		}
     }
 
+    private void updateStreamLabel() {
+        if (local != null) {
+            streamLabel.setText(String.format("queue %d (max %d), latency %.1f ms",
+                    local.getQueueDepth(), local.getMaxQueueDepth(),
+                    local.getAverageLatency() / 1e6));
+            return;
+        }
+        if (remote == null) {
+            return;
+        }
+        String text = String.format("%.1f KB/s, %.1f rounds/s", remote.getBytesPerSecond() / 1024,
+                remote.getRoundsPerSecond());
+        if (!remote.isConnected()) {
+            text += " (disconnected)";
+        } else if (remote.getReconnects() > 0) {
+            text += " (" + remote.getReconnects() + " reconnects)";
+        }
+        streamLabel.setText(text);
+    }
+
     public void updateRoundLabel(GameStateTimeline gst) {
         updateRoundLabel(gst.getRound(), gst.getNumRounds());
     }
@@ -247,7 +296,7 @@ public class ControlPanel extends JPanel
         GameStateTimeline gst = player.getTimeline();
         if (slider.getValueIsAdjusting() && !setSliderPrecise) {
             int round = slider.getValue();
-            gst.setRound(round - (round % gst.getRoundsPerKey()));
+            gst.seek(round);
         }
         setSliderPrecise = false;
         if (slider.getValue() > gst.getNumRounds()) {
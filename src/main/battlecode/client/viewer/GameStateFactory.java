@@ -8,5 +8,15 @@ public interface GameStateFactory<E extends GameState> {
 
   public abstract E cloneState(E state);
 
+  /**
+   * Clones a state that is about to become a keyframe. Keyframes are never
+   * modified or drawn, only copied with cloneState and copyState, so the
+   * clone may keep its state in a more compact form, and may share the
+   * parts of it that haven't changed with previousKeyFrame.
+   *
+   * @param previousKeyFrame the keyframe before this one, or null
+   */
+  public abstract E cloneKeyFrame(E state, E previousKeyFrame);
+
   public abstract void copyState(E src, E dst);
 }
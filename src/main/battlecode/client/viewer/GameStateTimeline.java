@@ -2,6 +2,7 @@ package battlecode.client.viewer;
 
 import battlecode.serial.*;
 import battlecode.engine.signal.Signal;
+import battlecode.server.Config;
 
 import java.util.*;
 
@@ -11,10 +12,20 @@ public class GameStateTimeline<E extends GameState> extends Observable {
   private Vector<E> keyFrames;
   private final int roundsPerKey;
 
+  // the round of each keyframe, written before the keyframe is added
+  private volatile int[] keyFrameRounds = new int[16];
+
+  // adaptive keyframe spacing, see isKeyFrameDue
+  private final long seekTargetNanos;
+  private int minRoundsPerKey;
+  private final int maxRoundsPerKey;
+
 	protected BufferedMatch match;
 	private boolean active = false; // technically volatile, but we can be lenient
 
-	protected E currentState = null;
+	protected volatile E currentState = null;
+	// whether setRound may replace currentState instead of copying into it
+	private boolean replaceable = false;
 	protected int currentRound = -1;
 
 	private E currentStateAlignedClone = null;
@@ -28,17 +39,68 @@ public class GameStateTimeline<E extends GameState> extends Observable {
   private volatile long applyTime = 0;
   private volatile long numApplies = 0;
 
+  // the keyframe builder waits on this until the match has new rounds,
+  // and callers of awaitRound until the builder has processed them
+  private final Object roundSignal = new Object();
+
+  // background seeks: a worker prepares states for seek targets and likely
+  // next rounds, which setRound then only has to install
+  private static final int MAX_PREPARED_STATES = 3;
+  private final boolean seekWorkerEnabled;
+  private volatile boolean prefetchEnabled = true;
+  private final Object seekLock = new Object();
+  private final LinkedHashMap<Integer, E> preparedStates = new LinkedHashMap<Integer, E>();
+  private int pendingSeek = -1;
+  private int pendingPrefetch = -1;
+
 	public GameStateTimeline(BufferedMatch match, GameStateFactory<E> gsf,
 	                         int rpk) {
+		this(match, gsf, rpk, true);
+	}
+
+	/**
+	 * @param seekWorker whether seeks and prefetches are prepared on a
+	 * background thread; without it, seek moves to the round right away, like
+	 * setRound, and prefetch does nothing
+	 */
+	public GameStateTimeline(BufferedMatch match, GameStateFactory<E> gsf,
+	                         int rpk, boolean seekWorker) {
 		this.gsf = gsf;
 		this.roundsPerKey = rpk;
 		this.match = match;
+		if (rpk < Integer.MAX_VALUE) {
+			seekTargetNanos = 1000000L * getConfigInt("bc.client.seek-target", 20);
+		}
+		else {
+			seekTargetNanos = 0;
+		}
+		seekWorkerEnabled = seekWorker && (rpk < Integer.MAX_VALUE);
+		minRoundsPerKey = rpk;
+		maxRoundsPerKey = (seekTargetNanos > 0 ? 4 * rpk : rpk);
 		match.addMatchListener(new MatchListener() {
 			public void headerReceived(BufferedMatch m) {
-				keyFrames = new Vector<E>(1 + m.getHeader().getMap().getMaxRounds() /
-				                              roundsPerKey);
+				int maxRounds = m.getHeader().getMap().getMaxRounds();
+				if (seekTargetNanos > 0) {
+					int limit = getConfigInt("bc.client.keyframe-limit",
+					                         2 * maxRounds / roundsPerKey);
+					minRoundsPerKey = Math.max(1, maxRounds / Math.max(1, limit));
+				}
+				keyFrames = new Vector<E>(1 + maxRounds / minRoundsPerKey);
 				active = true;
 				(new Thread() { public void run() { createKeyFrames(); } }).start();
+				if (seekWorkerEnabled) {
+					Thread worker = new Thread() { public void run() { runSeekWorker(); } };
+					worker.setDaemon(true);
+					worker.start();
+				}
+			}
+
+			public void roundsReceived(BufferedMatch m) {
+				wakeKeyFrameBuilder();
+			}
+
+			public void footerReceived(BufferedMatch m) {
+				wakeKeyFrameBuilder();
 			}
 		});
   }
@@ -51,12 +113,72 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 
 	public int getRoundsPerKey() { return roundsPerKey; }
 
+	private static int getConfigInt(String key, int def) {
+		String value = Config.getGlobalConfig().get(key);
+		if (value == null || value.trim().equals("")) {
+			return def;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * @return the round of the latest keyframe at or before the given round
+	 */
+	public int getKeyFrameRound(int round) {
+		return keyFrameRounds[findKeyFrame(round)];
+	}
+
+	private int findKeyFrame(int round) {
+		int n = keyFrames.size();
+		int[] rounds = keyFrameRounds;
+		int lo = 0, hi = n - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (rounds[mid] <= round) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	private void addKeyFrame(int round, E keyFrame) {
+		int n = keyFrames.size();
+		if (n == keyFrameRounds.length) {
+			keyFrameRounds = Arrays.copyOf(keyFrameRounds, 2 * n);
+		}
+		keyFrameRounds[n] = round;
+		keyFrames.addElement(keyFrame);
+	}
+
+	/**
+	 * Decides whether a keyframe should be taken, given the rounds and the
+	 * time spent applying them since the last keyframe. With a seek target,
+	 * keyframes are taken once replaying from the last one would exceed the
+	 * target, so busy stretches get dense keyframes and quiet stretches
+	 * sparse ones, within the bounds set by the keyframe limit.
+	 */
+	private boolean isKeyFrameDue(int roundsSinceKey, long applyNanosSinceKey) {
+		if (seekTargetNanos <= 0) {
+			return roundsSinceKey >= roundsPerKey;
+		}
+		return roundsSinceKey >= minRoundsPerKey
+			&& (applyNanosSinceKey >= seekTargetNanos
+			    || roundsSinceKey >= maxRoundsPerKey);
+	}
+
 	/**
 	 * Stops the creation of keyframes for this timeline and notifies all Observers.
 	 * Should only be used to dispose of the match viewer and player. 
 	 */
 	public void terminate() {
 		active = false;
+		wakeKeyFrameBuilder();
+		synchronized (seekLock) {
+			seekLock.notifyAll();
+		}
 		setChanged();
 		notifyObservers();
 		deleteObservers();
@@ -65,8 +187,10 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 	@SuppressWarnings("unchecked")
 	protected void createKeyFrames() {
 		E gs = gsf.createState((battlecode.world.GameMap)match.getHeader().getMap());
-		keyFrames.addElement(cloneState(gs));
+		addKeyFrame(0, cloneState(gs));
 		roundsProcessed = 0;
+		int roundsSinceKey = 0;
+		long applyNanosSinceKey = 0;
 		while (active) {
 			int roundsAvailable = match.getRoundsAvailable();
 			if (roundsProcessed == roundsAvailable && match.isFinished()) {
@@ -75,32 +199,78 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 			while (roundsProcessed < roundsAvailable && active) {
 				RoundDelta delta = match.getRound(roundsProcessed);
 				assert delta != null: "Null delta after handling " + roundsProcessed + " rounds";
-				applyDelta(gs, delta, match.getRoundStats(roundsProcessed));
-				if ((roundsProcessed + 1) % roundsPerKey == 0) {
-					keyFrames.addElement(cloneState(gs));
+				applyNanosSinceKey += applyDelta(gs, delta, match.getRoundStats(roundsProcessed));
+				roundsSinceKey++;
+				if (isKeyFrameDue(roundsSinceKey, applyNanosSinceKey)) {
+					addKeyFrame(roundsProcessed + 1, cloneKeyFrame(gs));
+					roundsSinceKey = 0;
+					applyNanosSinceKey = 0;
 				}
 				roundsProcessed++;
 				synchronized (this) { debugSignals = null; }
 			}
-			appliedDebugSignals = 0;
-			debugSignals = match.getDebugSignals(roundsProcessed);
-			if (debugSignals != null) {
+			synchronized (roundSignal) {
+				roundSignal.notifyAll();
+			}
+			List<Signal> signals = match.getDebugSignals(roundsProcessed);
+			synchronized (this) {
+				if (signals != debugSignals) {
+					debugSignals = signals;
+					appliedDebugSignals = 0;
+				}
+			}
+			awaitRounds(signals);
+		}
+	}
+
+	/**
+	 * Blocks until the match has rounds that haven't been processed, the
+	 * debug signals of the next round are no longer the given ones, the
+	 * match is finished or the timeline is terminated.
+	 */
+	private void awaitRounds(List<Signal> signals) {
+		synchronized (roundSignal) {
+			while (active && roundsProcessed == match.getRoundsAvailable()
+			       && match.getDebugSignals(roundsProcessed) == signals
+			       && !match.isFinished()) {
 				try {
-					while (roundsProcessed == match.getRoundsAvailable()) {
-						Thread.sleep(10);
-					}
+					roundSignal.wait();
 				}
 				catch (InterruptedException e) {}
 			}
-			else {
+		}
+	}
+
+	/**
+	 * Blocks until the rounds up to the given one have been processed, so
+	 * that setRound can move there, or the match is finished and all of
+	 * its rounds have been processed, or the timeline is terminated.
+	 */
+	public void awaitRound(int round) {
+		synchronized (roundSignal) {
+			while (active && roundsProcessed < round && !isFinished()) {
 				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
+					roundSignal.wait();
 				}
+				catch (InterruptedException e) {}
 			}
 		}
 	}
 
+	private void wakeKeyFrameBuilder() {
+		synchronized (roundSignal) {
+			roundSignal.notifyAll();
+		}
+	}
+
+  private E cloneKeyFrame(E gs) {
+    long startTime = System.nanoTime();
+    E clone = gsf.cloneKeyFrame(gs, keyFrames.isEmpty() ? null : keyFrames.lastElement());
+    cloneTime += (System.nanoTime() - startTime);
+    numClones ++;
+    return clone;
+  }
+
   private E cloneState(E gs) {
     long startTime = System.nanoTime();
     E clone = gsf.cloneState(gs);
@@ -113,14 +283,16 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 		applyDelta(gs, delta, null);
 	}
 
-	private void applyDelta(E gs, RoundDelta delta, RoundStats stats) {
+	private long applyDelta(E gs, RoundDelta delta, RoundStats stats) {
 		long startTime = System.nanoTime();
 		gs.apply(delta);
-		applyTime += (System.nanoTime() - startTime);
+		long elapsed = System.nanoTime() - startTime;
+		applyTime += elapsed;
 		numApplies ++;
 		if (stats != null) {
 			gs.apply(stats);
 		}
+		return elapsed;
 	}
 
 	private synchronized void syncToDebugSignals() {
@@ -142,7 +314,7 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 	round == 0) {
       return true;
     }
-    int numDeltas = round - currentRound - (round % roundsPerKey);
+    int numDeltas = round - currentRound - (round - getKeyFrameRound(round));
     // suggest a copy if the extra delta applications would take more time
     return numDeltas * applyTime * numClones > cloneTime * numApplies;
   }
@@ -174,10 +346,28 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 			return;
 		}
 
+		int previousRound = currentRound;
+		E prepared = null;
 		if (isKeyFrameRequired(round)) {
-			int keyFrame = round / roundsPerKey;
+			prepared = getPreparedState(round);
+		}
+		if (prepared != null && replaceable) {
+			// the prepared state becomes the current one and is changed from
+			// now on, so it can't be handed out again
+			synchronized (seekLock) {
+				preparedStates.remove(round);
+			}
+			currentState = prepared;
+			currentRound = round;
+		}
+		else if (prepared != null) {
+			gsf.copyState(prepared, currentState);
+			currentRound = round;
+		}
+		else if (isKeyFrameRequired(round)) {
+			int keyFrame = findKeyFrame(round);
 			gsf.copyState(keyFrames.get(keyFrame), currentState);
-			currentRound = keyFrame * roundsPerKey;
+			currentRound = keyFrameRounds[keyFrame];
 		}
 		else if (currentStateAlignedClone != null) { // realign currentState
 			gsf.copyState(currentStateAlignedClone, currentState);
@@ -190,6 +380,132 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 		}
 		setChanged();
 		notifyObservers();
+
+		// someone stepping backwards or skipping ahead is likely to keep going
+		int step = round - previousRound;
+		if (previousRound != -1 && step != 1) {
+			prefetch(round + step);
+		}
+	}
+
+	/**
+	 * Moves to the given round without blocking the caller. The state is
+	 * prepared by the seek worker and installed on the Swing event-dispatch
+	 * thread once it is ready; if a newer seek arrives in the meantime, only
+	 * the newest one is installed.
+	 */
+	public void seek(int round) {
+		round = Math.max(0, Math.min(round, roundsProcessed));
+		if (!seekWorkerEnabled || !isKeyFrameRequired(round)
+		    || getPreparedState(round) != null) {
+			setRound(round);
+			return;
+		}
+		synchronized (seekLock) {
+			pendingSeek = round;
+			seekLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Asks the seek worker to prepare the state of the given round, in case
+	 * it is requested soon.
+	 */
+	public void prefetch(int round) {
+		if (!seekWorkerEnabled || !prefetchEnabled
+		    || round < 0 || round >= roundsProcessed) {
+			return;
+		}
+		synchronized (seekLock) {
+			if (!preparedStates.containsKey(round)) {
+				pendingPrefetch = round;
+				seekLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Turns prefetching on or off. It is on by default; seeks are still
+	 * prepared in the background when it is off.
+	 */
+	public void setPrefetchEnabled(boolean enabled) {
+		prefetchEnabled = enabled;
+	}
+
+	private E getPreparedState(int round) {
+		if (round >= roundsProcessed) {
+			return null; // the last round may still receive debug signals
+		}
+		synchronized (seekLock) {
+			return preparedStates.get(round);
+		}
+	}
+
+	private void runSeekWorker() {
+		while (active) {
+			final int target;
+			synchronized (seekLock) {
+				while (active && pendingSeek == -1 && pendingPrefetch == -1) {
+					try {
+						seekLock.wait();
+					}
+					catch (InterruptedException e) {}
+				}
+				if (!active) {
+					return;
+				}
+				if (pendingSeek != -1) {
+					target = pendingSeek;
+				}
+				else {
+					target = pendingPrefetch;
+					pendingPrefetch = -1;
+				}
+			}
+
+			if (getPreparedState(target) == null) {
+				E state = prepareState(target);
+				synchronized (seekLock) {
+					preparedStates.put(target, state);
+					if (preparedStates.size() > MAX_PREPARED_STATES) {
+						Iterator<Integer> it = preparedStates.keySet().iterator();
+						it.next();
+						it.remove();
+					}
+				}
+			}
+
+			boolean install;
+			synchronized (seekLock) {
+				install = (pendingSeek == target);
+				if (install) {
+					pendingSeek = -1;
+				}
+			}
+			if (install) {
+				javax.swing.SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						setRound(target);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Builds a fresh state for the given round from the nearest keyframe.
+	 */
+	private E prepareState(int round) {
+		int keyFrame = findKeyFrame(round);
+		E state = gsf.cloneState(keyFrames.get(keyFrame));
+		for (int r = keyFrameRounds[keyFrame]; r < round; r++) {
+			state.apply(match.getRound(r));
+			RoundStats stats = match.getRoundStats(r);
+			if (stats != null) {
+				state.apply(stats);
+			}
+		}
+		return state;
 	}
 
 	public void refreshRound() {
@@ -200,8 +516,28 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 	}
 
 	public void setTargetState(E state) {
+		setTargetState(state, false);
+	}
+
+	/**
+	 * Sets the state that follows the rounds of this timeline.
+	 *
+	 * @param replaceable if true, setRound may replace the state with one
+	 * the seek worker has prepared instead of copying that one into it,
+	 * so the caller must look it up with getCurrentState rather than keep
+	 * a reference to it
+	 */
+	public void setTargetState(E state, boolean replaceable) {
 		currentRound = -1;
 		currentState = state;
+		this.replaceable = replaceable;
+	}
+
+	/**
+	 * @return the state at the current round
+	 */
+	public E getCurrentState() {
+		return currentState;
 	}
 
 	public void setMasterTimeline(final GameStateTimeline gst) {
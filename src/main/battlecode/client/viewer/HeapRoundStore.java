@@ -0,0 +1,55 @@
+package battlecode.client.viewer;
+
+import java.util.*;
+
+import battlecode.client.IndexedMatchFile;
+
+/**
+ * A round store that keeps every received round on the heap. Rounds from an
+ * indexed match file are deserialized each time they are requested.
+ */
+final class HeapRoundStore<T> implements RoundStore<T> {
+
+	private final Class<T> type;
+	private final List<Object> entries = new ArrayList<Object>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	public HeapRoundStore(Class<T> type) {
+		this.type = type;
+	}
+
+	public synchronized T get(int round) {
+		if (round >= entries.size()) {
+			return null;
+		}
+		Object entry = entries.get(round);
+		if (entry instanceof IndexedMatchFile.Chunk) {
+			misses++;
+			return type.cast(((IndexedMatchFile.Chunk) entry).load());
+		}
+		hits++;
+		return type.cast(entry);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void add(T round) {
+		entries.add(round);
+	}
+
+	public synchronized void addLazy(IndexedMatchFile.Chunk chunk) {
+		entries.add(chunk);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+	public long getSpills() { return 0; }
+}
@@ -8,5 +8,7 @@ public abstract class MatchListener {
 
 	public void breakReceived(BufferedMatch match) {}
 
+	public void roundsReceived(BufferedMatch match) {}
+
 	public void footerReceived(BufferedMatch match) {}
 }
@@ -1,6 +1,7 @@
 package battlecode.client.viewer;
 
 import battlecode.client.DebugProxy;
+import battlecode.client.RemoteClientProxy;
 
 import battlecode.serial.*;
 import battlecode.serial.notification.*;
@@ -54,6 +55,8 @@ public class MatchPlayer implements Observer, ActionListener {
     private javax.swing.Timer timer;
     private String label = "";
     private int stepSize = 1;
+    // the number of rounds to request from the server ahead of playback
+    private int readAhead = 2;
     // value that determines the delay in ticks between timer ticks
     private volatile static MatchPlayer currentPlayer = null;
     public static final int DEFAULT_TIME_DELTA = Config.getGlobalConfig().getInt("bc.client.viewer-delay");
@@ -71,6 +74,9 @@ public class MatchPlayer implements Observer, ActionListener {
         controller = c;
         controller.setPlayer(this);
         proxy = dp;
+        if (proxy instanceof RemoteClientProxy) {
+            readAhead = ((RemoteClientProxy) proxy).getWindow();
+        }
         match = gst.getMatch();
         match.addMatchListener(ml);
         match.addMatchPausedListener(ml);
@@ -139,10 +145,15 @@ public class MatchPlayer implements Observer, ActionListener {
 				timer.setDelay(fastForward * delta);
 		}
 
+    /**
+     * Keeps up to readAhead rounds requested ahead of playback. The request
+     * is topped up once less than half of it is left, so that a remote
+     * server isn't sent a notification for every round.
+     */
     private void requestRounds() {
         if (timeline.isActive() && !match.isFinished()) {
-            if (timeline.getRound() + 2 > roundsRequested) {
-                roundsRequested = timeline.getRound() + 2;
+            if (roundsRequested - timeline.getRound() < Math.max(2, readAhead / 2)) {
+                roundsRequested = timeline.getRound() + readAhead;
                 if (proxy != null) {
                     proxy.writeNotification(new RunNotification(roundsRequested));
                 }
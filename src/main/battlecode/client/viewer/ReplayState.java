@@ -0,0 +1,116 @@
+package battlecode.client.viewer;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.world.GameMap;
+
+/**
+ * A draw state without any graphics, for walking through matches where no
+ * display is available. It tracks the same robots and team totals as the
+ * renderers' states, but its animations only keep track of their lifetime.
+ */
+public class ReplayState extends AbstractDrawState<ReplayState.Robot> {
+
+  private static class Factory implements GameStateFactory<ReplayState> {
+
+    public ReplayState createState(GameMap map) {
+      return new ReplayState(map);
+    }
+
+    public ReplayState cloneState(ReplayState state) {
+      return new ReplayState(state);
+    }
+
+    public ReplayState cloneKeyFrame(ReplayState state, ReplayState previousKeyFrame) {
+      ReplayState clone = new ReplayState();
+      clone.freezeStateFrom(state, previousKeyFrame);
+      return clone;
+    }
+
+    public void copyState(ReplayState src, ReplayState dst) {
+      dst.copyStateFrom(src);
+    }
+  }
+  public static final GameStateFactory<ReplayState> FACTORY = new Factory();
+
+  static class Anim extends AbstractAnimation {
+
+    public Anim(int roundsToLive) {
+      super(roundsToLive);
+    }
+
+    public Object clone() {
+      Anim clone = new Anim(lifetime);
+      clone.roundsToLive = roundsToLive;
+      return clone;
+    }
+  }
+
+  public static class Robot extends AbstractDrawObject<Anim> {
+
+    public Robot(RobotType type, Team team, int id) {
+      super(type, team, id);
+      maxEnergon = type.maxHealth;
+    }
+
+    public Robot(Robot copy) {
+      super(copy);
+      maxEnergon = copy.maxEnergon;
+    }
+
+    public Anim createTeleportAnim(MapLocation src, MapLocation teleportLoc) {
+      return null;
+    }
+
+    public Anim createDeathExplosionAnim(boolean isArchon) {
+      return new Anim(1);
+    }
+
+    public Anim createMortarAttackAnim(MapLocation target) {
+      return null;
+    }
+
+    public Anim createMortarExplosionAnim(Anim mortarAttackAnim) {
+      return null;
+    }
+
+    public Anim createEnergonTransferAnim(MapLocation loc, RobotLevel height, float amt, boolean isFlux) {
+      return null;
+    }
+  }
+
+  public ReplayState() {
+    groundUnits = new RobotTable<Robot>();
+    airUnits = new RobotTable<Robot>();
+    encampments = new HashSet<MapLocation>();
+    fluxDeposits = new LinkedHashMap<Integer, FluxDepositState>();
+    currentRound = -1;
+  }
+
+  private ReplayState(GameMap map) {
+    this();
+    setGameMap(map);
+  }
+
+  private ReplayState(ReplayState clone) {
+    this();
+    copyStateFrom(clone);
+  }
+
+  protected Robot createDrawObject(RobotType type, Team team, int id) {
+    return new Robot(type, team, id);
+  }
+
+  protected Robot createDrawObject(Robot o) {
+    return new Robot(o);
+  }
+
+  public int getCurrentRound() {
+    return currentRound;
+  }
+}
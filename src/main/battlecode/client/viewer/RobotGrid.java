@@ -0,0 +1,182 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import battlecode.common.MapLocation;
+
+/**
+ * A uniform grid over map locations, for finding the robots at or near a
+ * location without looking at every robot.
+ *
+ * The grid isn't bounded by the map: cells are hashed into a fixed number
+ * of buckets, and every query checks the robots' actual locations, so two
+ * cells sharing a bucket only costs a few extra comparisons.
+ *
+ * The state that owns the grid has to call add, move and remove whenever a
+ * robot appears, changes location or disappears.
+ */
+public class RobotGrid<T extends AbstractDrawObject> {
+
+  /** The width and height of a cell is 1 << CELL_SHIFT locations. */
+  private static final int CELL_SHIFT = 2;
+  private static final int BUCKETS = 1024;
+  private static final int MASK = BUCKETS - 1;
+
+  private final Object[][] buckets = new Object[BUCKETS][];
+  private final int[] counts = new int[BUCKETS];
+  private int size = 0;
+
+  // buckets already looked at by the current query
+  private final int[] visited = new int[BUCKETS];
+  private int query = 0;
+
+  private static int bucket(int cellX, int cellY) {
+    int h = cellX * 0x9E3779B9 + cellY * 0x7FEB352D;
+    return (h ^ (h >>> 15)) & MASK;
+  }
+
+  private static int bucket(MapLocation loc) {
+    return bucket(loc.x >> CELL_SHIFT, loc.y >> CELL_SHIFT);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int b = 0; b < BUCKETS; b++) {
+      if (counts[b] > 0) {
+        Arrays.fill(buckets[b], 0, counts[b], null);
+        counts[b] = 0;
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Adds a robot at its current location.
+   */
+  public void add(T unit) {
+    MapLocation loc = unit.getLocation();
+    if (loc != null) {
+      insert(bucket(loc), unit);
+    }
+  }
+
+  private void insert(int b, Object unit) {
+    Object[] units = buckets[b];
+    if (units == null) {
+      units = buckets[b] = new Object[4];
+    } else if (counts[b] == units.length) {
+      units = buckets[b] = Arrays.copyOf(units, units.length * 2);
+    }
+    units[counts[b]++] = unit;
+    size++;
+  }
+
+  /**
+   * Removes a robot that was added at the given location.
+   */
+  public void remove(T unit, MapLocation loc) {
+    if (loc != null) {
+      delete(bucket(loc), unit);
+    }
+  }
+
+  private void delete(int b, Object unit) {
+    Object[] units = buckets[b];
+    int n = counts[b];
+    for (int i = 0; i < n; i++) {
+      if (units[i] == unit) {
+        units[i] = units[n - 1];
+        units[n - 1] = null;
+        counts[b] = n - 1;
+        size--;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Moves a robot that was added at from. Its current location is to.
+   */
+  public void move(T unit, MapLocation from, MapLocation to) {
+    int b = (to == null ? -1 : bucket(to));
+    if (from != null) {
+      if (bucket(from) == b) {
+        return;
+      }
+      delete(bucket(from), unit);
+    }
+    if (b >= 0) {
+      insert(b, unit);
+    }
+  }
+
+  /**
+   * Adds the robots whose locations are within the given bounds, inclusive,
+   * to out.
+   */
+  public void findInRect(int minX, int minY, int maxX, int maxY, List<? super T> out) {
+    if (size == 0 || minX > maxX || minY > maxY) {
+      return;
+    }
+    int minCellX = minX >> CELL_SHIFT, maxCellX = maxX >> CELL_SHIFT;
+    int minCellY = minY >> CELL_SHIFT, maxCellY = maxY >> CELL_SHIFT;
+    if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) >= BUCKETS) {
+      // covers more cells than there are buckets
+      for (int b = 0; b < BUCKETS; b++) {
+        scan(b, minX, minY, maxX, maxY, out);
+      }
+      return;
+    }
+    if (++query == 0) {
+      Arrays.fill(visited, 0);
+      query = 1;
+    }
+    for (int cx = minCellX; cx <= maxCellX; cx++) {
+      for (int cy = minCellY; cy <= maxCellY; cy++) {
+        int b = bucket(cx, cy);
+        if (visited[b] != query) {
+          visited[b] = query;
+          scan(b, minX, minY, maxX, maxY, out);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void scan(int b, int minX, int minY, int maxX, int maxY, List<? super T> out) {
+    Object[] units = buckets[b];
+    for (int i = 0, n = counts[b]; i < n; i++) {
+      T unit = (T) units[i];
+      MapLocation loc = unit.getLocation();
+      if (loc.x >= minX && loc.x <= maxX && loc.y >= minY && loc.y <= maxY) {
+        out.add(unit);
+      }
+    }
+  }
+
+  /**
+   * Adds the robots within the given squared distance of center to out.
+   */
+  public void findInRadius(MapLocation center, int radiusSquared, List<? super T> out) {
+    int r = (int) Math.sqrt(radiusSquared);
+    int start = out.size();
+    findInRect(center.x - r, center.y - r, center.x + r, center.y + r, out);
+    // drop the corners of the square
+    for (int i = out.size() - 1; i >= start; i--) {
+      if (center.distanceSquaredTo(((AbstractDrawObject) out.get(i)).getLocation()) > radiusSquared) {
+        out.remove(i);
+      }
+    }
+  }
+
+  /**
+   * Adds the robots at the given location to out.
+   */
+  public void findAt(MapLocation loc, List<? super T> out) {
+    findInRect(loc.x, loc.y, loc.x, loc.y, out);
+  }
+}
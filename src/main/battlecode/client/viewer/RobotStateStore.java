@@ -0,0 +1,430 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+
+import battlecode.common.Direction;
+import battlecode.common.GameConstants;
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+
+/**
+ * The robots of a keyframe, kept as parallel arrays with one slot per robot
+ * instead of as one object graph per robot.
+ *
+ * AbstractDrawObject.writeState and readState move a robot's state in and
+ * out of a slot; subclasses keep their own state in the extra columns.
+ * MapLocations and indicator strings are immutable, so their columns hold
+ * references. Animations are kept as the animation a robot had and the
+ * rounds it had left to live, which is all that changes in an animation.
+ *
+ * The slots are split into chunks of CHUNK_SIZE. A keyframe built with
+ * written and finish shares every chunk whose robots haven't changed since
+ * the previous keyframe with that keyframe, and copyFrom shares all of them.
+ * A chunk that has been shared is never written again. For chunks to line
+ * up, a keyframe keeps each robot in the slot it had in the previous one
+ * and leaves the slots of dead robots empty; see addEmpty.
+ */
+public class RobotStateStore {
+
+  /** The number of extra reference columns for subclasses. */
+  public static final int EXTRA_REFS = 4;
+
+  /** The number of extra int columns for subclasses. */
+  public static final int EXTRA_INTS = 2;
+
+  private static final int CHUNK_SHIFT = 5;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private static final int STRINGS = GameConstants.NUMBER_OF_INDICATOR_STRINGS;
+
+  static final AbstractAnimation.AnimationType[] animationTypes =
+    AbstractAnimation.AnimationType.values();
+  private static final int ANIMATIONS = animationTypes.length;
+
+  private static final RobotType[] robotTypes = RobotType.values();
+  private static final Team[] teamValues = Team.values();
+  private static final Direction[] directions = Direction.values();
+  private static final ActionType[] actionTypes = ActionType.values();
+
+  /** The columns of CHUNK_SIZE consecutive slots. */
+  static final class Chunk {
+    final int[] ids = new int[CHUNK_SIZE];
+    final byte[] types = new byte[CHUNK_SIZE];
+    final byte[] teams = new byte[CHUNK_SIZE];
+    final boolean[] air = new boolean[CHUNK_SIZE];
+    final MapLocation[] locs = new MapLocation[CHUNK_SIZE];
+    final byte[] dirs = new byte[CHUNK_SIZE];
+    final double[] energon = new double[CHUNK_SIZE];
+    final double[] shields = new double[CHUNK_SIZE];
+    final double[] flux = new double[CHUNK_SIZE];
+    final double[] maxEnergon = new double[CHUNK_SIZE];
+    final int[] moving = new int[CHUNK_SIZE];
+    final MapLocation[] targetLocs = new MapLocation[CHUNK_SIZE];
+    final int[] broadcast = new int[CHUNK_SIZE];
+    final long[] controlBits = new long[CHUNK_SIZE];
+    final int[] bytecodesUsed = new int[CHUNK_SIZE];
+    final String[] indicatorStrings = new String[CHUNK_SIZE * STRINGS];
+    final boolean[] turnedOn = new boolean[CHUNK_SIZE];
+    final boolean[] loaded = new boolean[CHUNK_SIZE];
+    final int[] regen = new int[CHUNK_SIZE];
+    final byte[] actionActions = new byte[CHUNK_SIZE];
+    final int[] totalActionRounds = new int[CHUNK_SIZE];
+    final int[] roundsUntilActionIdle = new int[CHUNK_SIZE];
+    final String[] hats = new String[CHUNK_SIZE];
+    final AbstractAnimation[] animations = new AbstractAnimation[CHUNK_SIZE * ANIMATIONS];
+    final int[] animationRounds = new int[CHUNK_SIZE * ANIMATIONS];
+    final Object[] extraRefs = new Object[CHUNK_SIZE * EXTRA_REFS];
+    final int[] extraInts = new int[CHUNK_SIZE * EXTRA_INTS];
+
+    // set once the chunk belongs to more than one store
+    boolean shared = false;
+
+    void clearRefs() {
+      // drop the references so they can be collected
+      Arrays.fill(locs, null);
+      Arrays.fill(targetLocs, null);
+      Arrays.fill(indicatorStrings, null);
+      Arrays.fill(hats, null);
+      Arrays.fill(animations, null);
+      Arrays.fill(extraRefs, null);
+    }
+
+    /**
+     * @return whether the first n slots of this chunk and o are the same;
+     * references are compared by identity
+     */
+    boolean sameSlots(Chunk o, int n) {
+      for (int i = 0; i < n; i++) {
+        if (ids[i] != o.ids[i] || types[i] != o.types[i] || teams[i] != o.teams[i]
+            || air[i] != o.air[i] || locs[i] != o.locs[i] || dirs[i] != o.dirs[i]
+            || energon[i] != o.energon[i] || shields[i] != o.shields[i]
+            || flux[i] != o.flux[i] || maxEnergon[i] != o.maxEnergon[i]
+            || moving[i] != o.moving[i] || targetLocs[i] != o.targetLocs[i]
+            || broadcast[i] != o.broadcast[i] || controlBits[i] != o.controlBits[i]
+            || bytecodesUsed[i] != o.bytecodesUsed[i] || turnedOn[i] != o.turnedOn[i]
+            || loaded[i] != o.loaded[i] || regen[i] != o.regen[i]
+            || actionActions[i] != o.actionActions[i]
+            || totalActionRounds[i] != o.totalActionRounds[i]
+            || roundsUntilActionIdle[i] != o.roundsUntilActionIdle[i]
+            || hats[i] != o.hats[i]) {
+          return false;
+        }
+      }
+      return sameRefs(indicatorStrings, o.indicatorStrings, n * STRINGS)
+        && sameRefs(animations, o.animations, n * ANIMATIONS)
+        && sameInts(animationRounds, o.animationRounds, n * ANIMATIONS)
+        && sameRefs(extraRefs, o.extraRefs, n * EXTRA_REFS)
+        && sameInts(extraInts, o.extraInts, n * EXTRA_INTS);
+    }
+
+    private static boolean sameRefs(Object[] a, Object[] b, int n) {
+      for (int i = 0; i < n; i++) {
+        if (a[i] != b[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean sameInts(int[] a, int[] b, int n) {
+      for (int i = 0; i < n; i++) {
+        if (a[i] != b[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private Chunk[] chunks;
+  private int size = 0;
+  private int empty = 0;
+  // a chunk that written replaced with a shared one, for the next add
+  private Chunk spare = null;
+
+  public RobotStateStore() {
+    this(64);
+  }
+
+  public RobotStateStore(int capacity) {
+    chunks = new Chunk[Math.max(1, (capacity + CHUNK_MASK) >>> CHUNK_SHIFT)];
+  }
+
+  /**
+   * @return the number of slots, including empty ones
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of empty slots
+   */
+  public int emptySlots() {
+    return empty;
+  }
+
+  public void clear() {
+    // chunks are filled in order, so the first null ends them; the owned
+    // ones are kept at the front for add to reuse
+    int n = 0;
+    for (int k = 0; k < chunks.length && chunks[k] != null; k++) {
+      Chunk c = chunks[k];
+      chunks[k] = null;
+      if (!c.shared) {
+        c.clearRefs();
+        chunks[n++] = c;
+      }
+    }
+    size = 0;
+    empty = 0;
+  }
+
+  /**
+   * @return a new slot at the end of the store
+   */
+  public int add() {
+    int k = size >>> CHUNK_SHIFT;
+    if (k == chunks.length) {
+      chunks = Arrays.copyOf(chunks, 2 * k);
+    }
+    Chunk c = chunks[k];
+    if (c == null || c.shared) {
+      Chunk own = spare;
+      spare = null;
+      if (own == null) {
+        own = new Chunk();
+      }
+      if (c != null) {
+        // copy the slots already in the shared chunk
+        copySlots(c, own, size & CHUNK_MASK);
+      }
+      chunks[k] = own;
+    }
+    return size++;
+  }
+
+  /**
+   * @return a new slot at the end of the store that holds no robot, to
+   * keep the slots of the robots after it where they were
+   */
+  public int addEmpty() {
+    int slot = add();
+    Chunk c = chunk(slot);
+    int i = index(slot);
+    c.ids[i] = 0;
+    c.types[i] = -1;
+    c.teams[i] = 0;
+    c.air[i] = false;
+    c.locs[i] = null;
+    c.dirs[i] = 0;
+    c.energon[i] = 0;
+    c.shields[i] = 0;
+    c.flux[i] = 0;
+    c.maxEnergon[i] = 0;
+    c.moving[i] = 0;
+    c.targetLocs[i] = null;
+    c.broadcast[i] = 0;
+    c.controlBits[i] = 0;
+    c.bytecodesUsed[i] = 0;
+    Arrays.fill(c.indicatorStrings, i * STRINGS, (i + 1) * STRINGS, null);
+    c.turnedOn[i] = false;
+    c.loaded[i] = false;
+    c.regen[i] = 0;
+    c.actionActions[i] = 0;
+    c.totalActionRounds[i] = 0;
+    c.roundsUntilActionIdle[i] = 0;
+    c.hats[i] = null;
+    Arrays.fill(c.animations, i * ANIMATIONS, (i + 1) * ANIMATIONS, null);
+    Arrays.fill(c.animationRounds, i * ANIMATIONS, (i + 1) * ANIMATIONS, 0);
+    Arrays.fill(c.extraRefs, i * EXTRA_REFS, (i + 1) * EXTRA_REFS, null);
+    Arrays.fill(c.extraInts, i * EXTRA_INTS, (i + 1) * EXTRA_INTS, 0);
+    empty++;
+    return slot;
+  }
+
+  /**
+   * To be called after each slot added for a keyframe has been written.
+   * When the slot completes a chunk that holds the same robots as the one
+   * at the same position in previous, which may be null, previous's chunk
+   * is shared instead.
+   */
+  public void written(int slot, RobotStateStore previous) {
+    if ((slot & CHUNK_MASK) == CHUNK_MASK) {
+      shareIfSame(slot >>> CHUNK_SHIFT, CHUNK_SIZE, previous);
+    }
+  }
+
+  /**
+   * To be called once every slot of a keyframe has been written, for its
+   * last, incomplete chunk.
+   */
+  public void finish(RobotStateStore previous) {
+    int n = size & CHUNK_MASK;
+    if (n != 0) {
+      shareIfSame(size >>> CHUNK_SHIFT, n, previous);
+    }
+  }
+
+  private void shareIfSame(int k, int n, RobotStateStore previous) {
+    if (previous == null || previous.size < (k << CHUNK_SHIFT) + n) {
+      return;
+    }
+    Chunk mine = chunks[k];
+    Chunk theirs = previous.chunks[k];
+    if (mine.sameSlots(theirs, n)) {
+      theirs.shared = true;
+      chunks[k] = theirs;
+      mine.clearRefs();
+      spare = mine;
+    }
+  }
+
+  /**
+   * Makes this store an exact copy of src, sharing all of its chunks.
+   */
+  public void copyFrom(RobotStateStore src) {
+    clear();
+    int n = (src.size + CHUNK_MASK) >>> CHUNK_SHIFT;
+    if (chunks.length < n) {
+      chunks = new Chunk[n];
+    }
+    for (int k = 0; k < n; k++) {
+      Chunk c = src.chunks[k];
+      c.shared = true;
+      chunks[k] = c;
+    }
+    size = src.size;
+    empty = src.empty;
+  }
+
+  /**
+   * @return whether this store shares every one of its chunks with other,
+   * so that both hold the same robots in the same slots
+   */
+  public boolean sharesAllWith(RobotStateStore other) {
+    if (size != other.size || empty != other.empty) {
+      return false;
+    }
+    for (int k = 0, n = (size + CHUNK_MASK) >>> CHUNK_SHIFT; k < n; k++) {
+      if (chunks[k] != other.chunks[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void copySlots(Chunk src, Chunk dst, int n) {
+    System.arraycopy(src.ids, 0, dst.ids, 0, n);
+    System.arraycopy(src.types, 0, dst.types, 0, n);
+    System.arraycopy(src.teams, 0, dst.teams, 0, n);
+    System.arraycopy(src.air, 0, dst.air, 0, n);
+    System.arraycopy(src.locs, 0, dst.locs, 0, n);
+    System.arraycopy(src.dirs, 0, dst.dirs, 0, n);
+    System.arraycopy(src.energon, 0, dst.energon, 0, n);
+    System.arraycopy(src.shields, 0, dst.shields, 0, n);
+    System.arraycopy(src.flux, 0, dst.flux, 0, n);
+    System.arraycopy(src.maxEnergon, 0, dst.maxEnergon, 0, n);
+    System.arraycopy(src.moving, 0, dst.moving, 0, n);
+    System.arraycopy(src.targetLocs, 0, dst.targetLocs, 0, n);
+    System.arraycopy(src.broadcast, 0, dst.broadcast, 0, n);
+    System.arraycopy(src.controlBits, 0, dst.controlBits, 0, n);
+    System.arraycopy(src.bytecodesUsed, 0, dst.bytecodesUsed, 0, n);
+    System.arraycopy(src.indicatorStrings, 0, dst.indicatorStrings, 0, n * STRINGS);
+    System.arraycopy(src.turnedOn, 0, dst.turnedOn, 0, n);
+    System.arraycopy(src.loaded, 0, dst.loaded, 0, n);
+    System.arraycopy(src.regen, 0, dst.regen, 0, n);
+    System.arraycopy(src.actionActions, 0, dst.actionActions, 0, n);
+    System.arraycopy(src.totalActionRounds, 0, dst.totalActionRounds, 0, n);
+    System.arraycopy(src.roundsUntilActionIdle, 0, dst.roundsUntilActionIdle, 0, n);
+    System.arraycopy(src.hats, 0, dst.hats, 0, n);
+    System.arraycopy(src.animations, 0, dst.animations, 0, n * ANIMATIONS);
+    System.arraycopy(src.animationRounds, 0, dst.animationRounds, 0, n * ANIMATIONS);
+    System.arraycopy(src.extraRefs, 0, dst.extraRefs, 0, n * EXTRA_REFS);
+    System.arraycopy(src.extraInts, 0, dst.extraInts, 0, n * EXTRA_INTS);
+  }
+
+  /**
+   * @return the chunk that holds the slot
+   */
+  Chunk chunk(int slot) {
+    return chunks[slot >>> CHUNK_SHIFT];
+  }
+
+  /**
+   * @return the index of the slot in its chunk
+   */
+  static int index(int slot) {
+    return slot & CHUNK_MASK;
+  }
+
+  public boolean isEmpty(int slot) {
+    return chunk(slot).types[index(slot)] < 0;
+  }
+
+  public int getID(int slot) {
+    return chunk(slot).ids[index(slot)];
+  }
+
+  public RobotType getType(int slot) {
+    return robotTypes[chunk(slot).types[index(slot)]];
+  }
+
+  public Team getTeam(int slot) {
+    return teamValues[chunk(slot).teams[index(slot)]];
+  }
+
+  public boolean isAir(int slot) {
+    return chunk(slot).air[index(slot)];
+  }
+
+  void setAir(int slot, boolean air) {
+    chunk(slot).air[index(slot)] = air;
+  }
+
+  static int stringIndex(int i, int index) {
+    return i * STRINGS + index;
+  }
+
+  static int animationIndex(int i, int type) {
+    return i * ANIMATIONS + type;
+  }
+
+  static byte ordinal(Enum<?> e) {
+    return (byte) (e == null ? -1 : e.ordinal());
+  }
+
+  static RobotType type(byte ordinal) {
+    return robotTypes[ordinal];
+  }
+
+  static Team team(byte ordinal) {
+    return teamValues[ordinal];
+  }
+
+  static Direction direction(byte ordinal) {
+    return (ordinal < 0 ? null : directions[ordinal]);
+  }
+
+  static ActionType actionType(byte ordinal) {
+    return (ordinal < 0 ? null : actionTypes[ordinal]);
+  }
+
+  public Object getRef(int slot, int column) {
+    return chunk(slot).extraRefs[index(slot) * EXTRA_REFS + column];
+  }
+
+  public void setRef(int slot, int column, Object value) {
+    chunk(slot).extraRefs[index(slot) * EXTRA_REFS + column] = value;
+  }
+
+  public int getInt(int slot, int column) {
+    return chunk(slot).extraInts[index(slot) * EXTRA_INTS + column];
+  }
+
+  public void setInt(int slot, int column, int value) {
+    chunk(slot).extraInts[index(slot) * EXTRA_INTS + column] = value;
+  }
+}
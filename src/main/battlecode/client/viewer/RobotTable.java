@@ -0,0 +1,345 @@
+package battlecode.client.viewer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from robot IDs to robots that doesn't box the IDs on lookup.
+ *
+ * Robots are kept in insertion order in parallel arrays, so iteration (and
+ * thus draw order) is the same as with a LinkedHashMap. An open-addressing
+ * hash table of ints maps each ID to its position in those arrays. Removed
+ * robots leave a hole that is compacted away on a later insertion.
+ *
+ * The int methods get, put and remove are the ones to use in signal
+ * handlers; the Map methods are there for the code that iterates entries.
+ */
+public class RobotTable<T> extends AbstractMap<Integer, T> {
+
+  private static final int EMPTY = -1;
+
+  // insertion-ordered robots; values[i] == null marks a removed robot
+  private int[] ids;
+  private Object[] values;
+  private Entry[] entries;
+  private int end = 0; // one past the last used position
+  private int size = 0;
+
+  // hash slots holding positions, or EMPTY
+  private int[] slots;
+  private int mask;
+
+  private int modCount = 0;
+
+  private Set<Map.Entry<Integer, T>> entrySet = null;
+
+  public RobotTable() {
+    this(16);
+  }
+
+  public RobotTable(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize) {
+      capacity <<= 1;
+    }
+    ids = new int[capacity];
+    values = new Object[capacity];
+    entries = newEntries(capacity);
+    slots = new int[capacity * 2];
+    Arrays.fill(slots, EMPTY);
+    mask = slots.length - 1;
+  }
+
+  // Entry is an inner class of a generic class, so its arrays have to be
+  // created raw
+  @SuppressWarnings("unchecked")
+  private Entry[] newEntries(int capacity) {
+    return (Entry[]) new RobotTable.Entry[capacity];
+  }
+
+  /** An entry of the table, created once per inserted robot. */
+  private final class Entry implements Map.Entry<Integer, T> {
+
+    private final int pos;
+    private Integer key = null;
+
+    Entry(int pos) {
+      this.pos = pos;
+    }
+
+    public Integer getKey() {
+      if (key == null) {
+        key = Integer.valueOf(ids[pos]);
+      }
+      return key;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue() {
+      return (T) values[pos];
+    }
+
+    public T setValue(T value) {
+      if (value == null) {
+        throw new NullPointerException();
+      }
+      T old = getValue();
+      values[pos] = value;
+      return old;
+    }
+  }
+
+  private static int hash(int id) {
+    int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the position of the live robot with the given ID, or -1
+   */
+  private int find(int id) {
+    for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+      int pos = slots[i];
+      if (pos == EMPTY) {
+        return -1;
+      }
+      if (ids[pos] == id && values[pos] != null) {
+        return pos;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public T get(int id) {
+    int pos = find(id);
+    return (pos < 0 ? null : (T) values[pos]);
+  }
+
+  public boolean containsKey(int id) {
+    return find(id) >= 0;
+  }
+
+  /**
+   * Adds or replaces a robot. A new robot goes to the end of the
+   * iteration order.
+   *
+   * @return the robot previously stored under the ID, or null
+   */
+  @SuppressWarnings("unchecked")
+  public T put(int id, T value) {
+    if (value == null) {
+      throw new NullPointerException("null robot #" + id);
+    }
+    int pos = find(id);
+    if (pos >= 0) {
+      T old = (T) values[pos];
+      values[pos] = value;
+      return old;
+    }
+    if (end == ids.length) {
+      // compact if at least a quarter are holes, otherwise grow
+      rebuild(size * 4 <= end * 3 ? ids.length : ids.length * 2);
+    }
+    pos = end++;
+    ids[pos] = id;
+    values[pos] = value;
+    entries[pos] = null;
+    insertSlot(id, pos);
+    size++;
+    modCount++;
+    return null;
+  }
+
+  private void insertSlot(int id, int pos) {
+    int i = hash(id) & mask;
+    while (slots[i] != EMPTY) {
+      i = (i + 1) & mask;
+    }
+    slots[i] = pos;
+  }
+
+  /**
+   * @return the removed robot, or null if there was none with the ID
+   */
+  @SuppressWarnings("unchecked")
+  public T remove(int id) {
+    int pos = find(id);
+    if (pos < 0) {
+      return null;
+    }
+    T old = (T) values[pos];
+    removeAt(pos);
+    return old;
+  }
+
+  private void removeAt(int pos) {
+    // the slot stays, pointing at the hole, until the next rebuild
+    values[pos] = null;
+    entries[pos] = null;
+    size--;
+    modCount++;
+  }
+
+  /**
+   * Moves the live robots to the front, in order, into arrays of the given
+   * capacity, and rehashes them.
+   */
+  private void rebuild(int capacity) {
+    int[] newIDs = new int[capacity];
+    Object[] newValues = new Object[capacity];
+    Entry[] newEntries = newEntries(capacity);
+    int n = 0;
+    for (int i = 0; i < end; i++) {
+      if (values[i] != null) {
+        newIDs[n] = ids[i];
+        newValues[n] = values[i];
+        n++;
+      }
+    }
+    ids = newIDs;
+    values = newValues;
+    entries = newEntries;
+    end = n;
+    if (slots.length < capacity * 2) {
+      slots = new int[capacity * 2];
+      mask = slots.length - 1;
+    }
+    Arrays.fill(slots, EMPTY);
+    for (int i = 0; i < n; i++) {
+      insertSlot(ids[i], i);
+    }
+    modCount++;
+  }
+
+  /**
+   * Makes room for the given number of robots without rehashing.
+   */
+  public void ensureCapacity(int expectedSize) {
+    if (expectedSize > ids.length) {
+      int capacity = ids.length;
+      while (capacity < expectedSize) {
+        capacity <<= 1;
+      }
+      rebuild(capacity);
+    }
+  }
+
+  /**
+   * @return one past the last position that may hold a robot, for use with
+   * idAt and valueAt
+   */
+  public int positions() {
+    return end;
+  }
+
+  public int idAt(int pos) {
+    return ids[pos];
+  }
+
+  /**
+   * @return the robot at the given position, or null if it was removed
+   */
+  @SuppressWarnings("unchecked")
+  public T valueAt(int pos) {
+    return (T) values[pos];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(values, 0, end, null);
+    Arrays.fill(entries, 0, end, null);
+    Arrays.fill(slots, EMPTY);
+    end = 0;
+    size = 0;
+    modCount++;
+  }
+
+  public T get(Object key) {
+    return (key instanceof Integer ? get(((Integer) key).intValue()) : null);
+  }
+
+  public boolean containsKey(Object key) {
+    return (key instanceof Integer && containsKey(((Integer) key).intValue()));
+  }
+
+  public T put(Integer key, T value) {
+    return put(key.intValue(), value);
+  }
+
+  public T remove(Object key) {
+    return (key instanceof Integer ? remove(((Integer) key).intValue()) : null);
+  }
+
+  public Set<Map.Entry<Integer, T>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Map.Entry<Integer, T>>() {
+        public Iterator<Map.Entry<Integer, T>> iterator() {
+          return new EntryIterator();
+        }
+
+        public int size() {
+          return size;
+        }
+
+        public void clear() {
+          RobotTable.this.clear();
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<Integer, T>> {
+
+    private int next = 0;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    public boolean hasNext() {
+      while (next < end && values[next] == null) {
+        next++;
+      }
+      return next < end;
+    }
+
+    public Map.Entry<Integer, T> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      Entry e = entries[last];
+      if (e == null) {
+        e = new Entry(last);
+        entries[last] = e;
+      }
+      return e;
+    }
+
+    public void remove() {
+      if (last < 0 || values[last] == null) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      expectedModCount = modCount;
+    }
+  }
+}
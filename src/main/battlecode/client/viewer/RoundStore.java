@@ -0,0 +1,41 @@
+package battlecode.client.viewer;
+
+import battlecode.client.IndexedMatchFile;
+
+/**
+ * Holds the rounds (or round statistics) of a match in order. Implementations
+ * decide how much of the match is kept on the heap.
+ *
+ * @param <T> RoundDelta or RoundStats
+ */
+public interface RoundStore<T> {
+
+	/**
+	 * Appends a round that has already been deserialized.
+	 */
+	public void add(T round);
+
+	/**
+	 * Appends a round that lives in an indexed match file and is loaded on
+	 * demand.
+	 */
+	public void addLazy(IndexedMatchFile.Chunk chunk);
+
+	/**
+	 * @return the given round, or null if it hasn't been received yet
+	 */
+	public T get(int round);
+
+	public int size();
+
+	public void clear();
+
+	/** @return the number of lookups answered from the heap */
+	public long getHits();
+
+	/** @return the number of lookups that had to load the round */
+	public long getMisses();
+
+	/** @return the number of rounds written to the spill file */
+	public long getSpills();
+}
@@ -0,0 +1,165 @@
+package battlecode.client.viewer;
+
+import java.io.*;
+import java.util.*;
+
+import battlecode.client.IndexedMatchFile;
+
+/**
+ * A round store that keeps only a window of recently used rounds on the heap.
+ * Rounds that fall out of the window are written once to a temporary spill
+ * file (or simply dropped, if they can be reloaded from an indexed match file)
+ * and deserialized again when they are requested.
+ */
+final class SpillingRoundStore<T> implements RoundStore<T> {
+
+	private final Class<T> type;
+	private final int window;
+
+	// least recently used rounds first
+	private final LinkedHashMap<Integer, T> cache;
+
+	// where each round can be reloaded from, if it is not cached
+	private final List<IndexedMatchFile.Chunk> chunks =
+		new ArrayList<IndexedMatchFile.Chunk>();
+	private long[] spillOffsets = new long[64];
+	private int[] spillLengths = new int[64];
+	private int size = 0;
+
+	private RandomAccessFile spillFile = null;
+	private final ByteArrayOutputStream spillBuffer = new ByteArrayOutputStream();
+
+	private long hits = 0;
+	private long misses = 0;
+	private long spills = 0;
+
+	/**
+	 * @param type the class of the stored rounds
+	 * @param window the number of rounds to keep on the heap
+	 */
+	public SpillingRoundStore(Class<T> type, int window) {
+		assert window > 0;
+		this.type = type;
+		this.window = window;
+		cache = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+			private static final long serialVersionUID = 0; // don't serialize
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+				if (size() > SpillingRoundStore.this.window) {
+					evict(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public synchronized T get(int round) {
+		if (round >= size) {
+			return null;
+		}
+		T cached = cache.get(round);
+		if (cached != null) {
+			hits++;
+			return cached;
+		}
+		misses++;
+		T loaded;
+		IndexedMatchFile.Chunk chunk = chunks.get(round);
+		if (chunk != null) {
+			loaded = type.cast(chunk.load());
+		}
+		else {
+			loaded = unspill(round);
+		}
+		cache.put(round, loaded);
+		return loaded;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void add(T round) {
+		append(null);
+		cache.put(size - 1, round);
+	}
+
+	public synchronized void addLazy(IndexedMatchFile.Chunk chunk) {
+		append(chunk);
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+		chunks.clear();
+		size = 0;
+		if (spillFile != null) {
+			try {
+				spillFile.setLength(0);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+	public synchronized long getSpills() { return spills; }
+
+	private void append(IndexedMatchFile.Chunk chunk) {
+		if (size == spillOffsets.length) {
+			spillOffsets = Arrays.copyOf(spillOffsets, 2 * size);
+			spillLengths = Arrays.copyOf(spillLengths, 2 * size);
+		}
+		spillOffsets[size] = -1;
+		chunks.add(chunk);
+		size++;
+	}
+
+	private void evict(int round, T value) {
+		if (chunks.get(round) != null || spillOffsets[round] != -1) {
+			return; // can be reloaded
+		}
+		try {
+			if (spillFile == null) {
+				File f = File.createTempFile("bc-rounds", ".tmp");
+				f.deleteOnExit();
+				spillFile = new RandomAccessFile(f, "rw");
+			}
+			spillBuffer.reset();
+			ObjectOutputStream oos = new ObjectOutputStream(spillBuffer);
+			oos.writeObject(value);
+			oos.close();
+			long offset = spillFile.length();
+			spillFile.seek(offset);
+			spillFile.write(spillBuffer.toByteArray());
+			spillOffsets[round] = offset;
+			spillLengths[round] = spillBuffer.size();
+			spills++;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Couldn't spill round " + round);
+		}
+	}
+
+	private T unspill(int round) {
+		assert spillOffsets[round] != -1 : "Round " + round + " was never spilled";
+		try {
+			byte[] data = new byte[spillLengths[round]];
+			spillFile.seek(spillOffsets[round]);
+			spillFile.readFully(data);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+			return type.cast(ois.readObject());
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			throw new RuntimeException("Couldn't reload round " + round);
+		}
+	}
+
+	protected void finalize() throws Throwable {
+		if (spillFile != null) spillFile.close();
+	}
+}
@@ -0,0 +1,108 @@
+package battlecode.client.viewer;
+
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+
+/**
+ * Per-team totals over the robots of a state: robot counts by type, total
+ * energon and bytecodes used, and resources.
+ *
+ * AbstractDrawState keeps these up to date from its signal visitors as
+ * robots are added, change and are removed, so reading them doesn't depend
+ * on the number of robots. Copying them is a few array copies.
+ */
+public class TeamAggregates {
+
+  private static final int TEAMS = Team.values().length;
+  private static final int TYPES = RobotType.values().length;
+
+  private final int[][] counts = new int[TEAMS][TYPES];
+  private final int[] totals = new int[TEAMS];
+  private final double[] hp = new double[TEAMS];
+  private final long[] bytecodes = new long[TEAMS];
+  private final double[] resources = new double[TEAMS];
+
+  public void copyFrom(TeamAggregates src) {
+    for (int t = 0; t < TEAMS; t++) {
+      System.arraycopy(src.counts[t], 0, counts[t], 0, TYPES);
+    }
+    System.arraycopy(src.totals, 0, totals, 0, TEAMS);
+    System.arraycopy(src.hp, 0, hp, 0, TEAMS);
+    System.arraycopy(src.bytecodes, 0, bytecodes, 0, TEAMS);
+    System.arraycopy(src.resources, 0, resources, 0, TEAMS);
+  }
+
+  public void clear() {
+    for (int t = 0; t < TEAMS; t++) {
+      for (int r = 0; r < TYPES; r++) {
+        counts[t][r] = 0;
+      }
+      totals[t] = 0;
+      hp[t] = 0;
+      bytecodes[t] = 0;
+      resources[t] = 0;
+    }
+  }
+
+  void robotAdded(AbstractDrawObject<?> robot) {
+    int t = robot.getTeam().ordinal();
+    counts[t][robot.getType().ordinal()]++;
+    totals[t]++;
+    hp[t] += robot.getEnergon();
+    bytecodes[t] += robot.getBytecodesUsed();
+  }
+
+  void robotRemoved(AbstractDrawObject<?> robot) {
+    int t = robot.getTeam().ordinal();
+    counts[t][robot.getType().ordinal()]--;
+    totals[t]--;
+    hp[t] -= robot.getEnergon();
+    bytecodes[t] -= robot.getBytecodesUsed();
+  }
+
+  /**
+   * To be called after a robot's energon changed from previous.
+   */
+  void energonChanged(AbstractDrawObject<?> robot, double previous) {
+    hp[robot.getTeam().ordinal()] += robot.getEnergon() - previous;
+  }
+
+  /**
+   * To be called after a robot's bytecodes used changed from previous.
+   */
+  void bytecodesChanged(AbstractDrawObject<?> robot, int previous) {
+    bytecodes[robot.getTeam().ordinal()] += robot.getBytecodesUsed() - previous;
+  }
+
+  void setResources(double[] teamResources) {
+    System.arraycopy(teamResources, 0, resources, 0, Math.min(teamResources.length, TEAMS));
+  }
+
+  /**
+   * @return the number of robots of each type, indexed by ordinal. The
+   * array is shared and must not be modified.
+   */
+  public int[] getRobotCounts(Team t) {
+    return counts[t.ordinal()];
+  }
+
+  public int getRobotCount(Team t, RobotType type) {
+    return counts[t.ordinal()][type.ordinal()];
+  }
+
+  public int getTotalRobots(Team t) {
+    return totals[t.ordinal()];
+  }
+
+  public double getHP(Team t) {
+    return hp[t.ordinal()];
+  }
+
+  public long getBytecodesUsed(Team t) {
+    return bytecodes[t.ordinal()];
+  }
+
+  public double getResources(Team t) {
+    return resources[t.ordinal()];
+  }
+}
@@ -0,0 +1,67 @@
+package battlecode.client.viewer.render;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes the drawing thread allocates per frame, for the debug
+ * overlay. Relies on the HotSpot extension of ThreadMXBean; on other VMs
+ * isSupported is false and the count stays at zero.
+ */
+public class AllocationCounter {
+
+  private final com.sun.management.ThreadMXBean bean;
+  private long start = -1;
+  private double bytesPerFrame = 0;
+
+  public AllocationCounter() {
+    ThreadMXBean b = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean hotspot = null;
+    if (b instanceof com.sun.management.ThreadMXBean) {
+      hotspot = (com.sun.management.ThreadMXBean) b;
+      try {
+        if (hotspot.isThreadAllocatedMemorySupported()) {
+          hotspot.setThreadAllocatedMemoryEnabled(true);
+        } else {
+          hotspot = null;
+        }
+      } catch (UnsupportedOperationException e) {
+        hotspot = null;
+      }
+    }
+    bean = hotspot;
+  }
+
+  public boolean isSupported() {
+    return bean != null;
+  }
+
+  /**
+   * To be called by the drawing thread when it starts a frame.
+   */
+  public void beginFrame() {
+    if (bean != null) {
+      start = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+  }
+
+  /**
+   * To be called by the drawing thread when it is done with a frame.
+   */
+  public void endFrame() {
+    if (bean != null && start >= 0) {
+      long bytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+      // smoothed like FramerateTracker, so the overlay is readable
+      bytesPerFrame = (bytesPerFrame + bytes) * 0.5;
+      start = -1;
+    }
+  }
+
+  /**
+   * @return the bytes allocated per frame, averaged over the last few
+   * frames
+   */
+  public double getBytesPerFrame() {
+    return bytesPerFrame;
+  }
+}
@@ -7,13 +7,17 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.HierarchyEvent;
 import java.awt.event.HierarchyListener;
+import java.util.List;
 import java.util.Observer;
 
 import javax.swing.*;
 
+import battlecode.client.viewer.AbstractDrawObject;
+import battlecode.client.viewer.AbstractDrawState;
 import battlecode.client.viewer.BufferedMatch;
 import battlecode.client.viewer.GameStateTimeline;
 import battlecode.client.viewer.MatchPlayer;
+import battlecode.common.MapLocation;
 import battlecode.engine.signal.Signal;
 import battlecode.world.signal.DeathSignal;
 
@@ -51,6 +55,18 @@ public abstract class BaseCanvas extends JPanel {
 
     }
 
+    /**
+     * @return the ID of a robot at the given location, or -1 if there is none
+     */
+    private int findRobotAt(MapLocation loc) {
+        AbstractDrawState<?> ds = getRenderer().getDrawState();
+        if (ds == null) {
+            return -1;
+        }
+        List<?> robots = ds.getRobotsAt(loc);
+        return (robots.isEmpty() ? -1 : ((AbstractDrawObject<?>) robots.get(0)).getID());
+    }
+
     protected void initKeyBindings() {
         InputMap im = getInputMap(WHEN_IN_FOCUSED_WINDOW);
         im.put(KeyStroke.getKeyStroke("ESCAPE"), "exit");
@@ -103,10 +119,22 @@ public abstract class BaseCanvas extends JPanel {
 
             public void actionPerformed(ActionEvent e) {
                 if (getRenderer() != null) {
-                    String strID = JOptionPane.showInputDialog("Find robot by ID:");
+                    String strID = JOptionPane.showInputDialog("Find robot by ID or by location (x,y):");
+                    if (strID == null) {
+                        return;
+                    }
                     int robotID;
                     try {
-                        robotID = Integer.parseInt(strID);
+                        int comma = strID.indexOf(',');
+                        if (comma >= 0) {
+                            robotID = findRobotAt(new MapLocation(Integer.parseInt(strID.substring(0, comma).trim()),
+                                                                  Integer.parseInt(strID.substring(comma + 1).trim())));
+                            if (robotID == -1) {
+                                return;
+                            }
+                        } else {
+                            robotID = Integer.parseInt(strID.trim());
+                        }
                     } catch (NumberFormatException ex) {
                         return;
                     }
@@ -114,6 +114,9 @@ public abstract class BaseRenderer {
     case 'U':
       RenderConfiguration.toggleCows();
       break;
+    case 'V':
+      RenderConfiguration.toggleDebugOverlay();
+      break;
     case 'X':
       RenderConfiguration.toggleExplosions();
       break;
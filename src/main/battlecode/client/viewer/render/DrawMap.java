@@ -17,6 +17,8 @@ import java.awt.image.BufferedImage;
 import java.awt.Transparency;
 import java.awt.GraphicsEnvironment;
 import java.util.Collection;
+import java.util.Observable;
+import java.util.Observer;
 
 import battlecode.client.util.ImageFile;
 import battlecode.client.viewer.FluxDepositState;
@@ -32,6 +34,8 @@ public class DrawMap {
   private int mapWidth;
   private int mapHeight;
   private Stroke gridStroke;
+  private static final Color gridColor = new Color(0.7f, 0.7f, 0.7f, 1.0f);
+  private final Line2D.Float gridline = new Line2D.Float();
   // number of blocks at each square
   // origin of the map
   MapLocation origin;
@@ -58,6 +62,20 @@ public class DrawMap {
   private final int innerVoidTileCount = 5; // inCorners, horiz, vert, outCorners, water
   private final int innerVoidSubtileWidth = innerVoidTileCount * subtileHeight; // side by side
   private final byte atlasChoiceBit = 5;
+
+  // the terrain never changes during a match, so the prerendered layer is
+  // only rebuilt when it has been invalidated (art reload)
+  private boolean dirty = true;
+  private boolean customBackground = false;
+  private float renderedSpriteSize = -1;
+  private int prerenderCount = 0;
+
+  // the map art, shared by every DrawMap. DataFile reloads these when they
+  // change on disk and artVersion counts the reloads, so that each map
+  // rebuilds its tiles the next time it is drawn
+  private static ImageFile bgFile, roadFile, voidFile;
+  private static volatile int artVersion = 0;
+  private int loadedArtVersion;
   
   public battlecode.world.GameMap m;
 
@@ -68,18 +86,84 @@ public class DrawMap {
 
     this.m = map;
     
+    loadArtFiles();
+    loadedArtVersion = artVersion;
     loadMapArt();
 
     //FIXME: commented out for now
 //    if (!RenderConfiguration.getInstance().isTournamentMode()) {
-    prerenderMap(map);
+    redraw();
 //    }
-    gridStroke = new BasicStroke(0.3f / RenderConfiguration.getInstance().getSpriteSize());
 
   }
 
-  public void redraw() {
-    prerenderMap(this.m);
+  private static synchronized void loadArtFiles() {
+    if (bgFile != null) {
+      return;
+    }
+    Observer observer = new Observer() {
+        public void update(Observable o, Object arg) {
+          synchronized (DrawMap.class) {
+            artVersion++;
+          }
+        }
+      };
+    bgFile = new ImageFile("art/map_bg.png");
+    roadFile = new ImageFile("art/roads.png"); // actual rendering
+    voidFile = new ImageFile("art/innervoid.png"); // actual rendering
+    bgFile.addObserver(observer);
+    roadFile.addObserver(observer);
+    voidFile.addObserver(observer);
+  }
+
+  /**
+   * Rebuilds the cached map layer if it is out of date. This is cheap to
+   * call every frame; the tiles are only redrawn after the layer has been
+   * invalidated.
+   */
+  public synchronized void redraw() {
+    float spriteSize = RenderConfiguration.getInstance().getSpriteSize();
+    if (spriteSize != renderedSpriteSize) {
+      // the layer is drawn at locPixelWidth pixels a square whatever the
+      // sprite size, so zooming only changes the gridlines
+      gridStroke = new BasicStroke(0.3f / spriteSize);
+      renderedSpriteSize = spriteSize;
+    }
+    if (loadedArtVersion != artVersion) {
+      reloadArt();
+    }
+    if (dirty && !customBackground) {
+      prerenderMap(this.m);
+    }
+  }
+
+  /**
+   * Marks the cached map layer as stale, so that it is rebuilt by the next
+   * call to redraw.
+   */
+  public void invalidate() {
+    dirty = true;
+  }
+
+  /**
+   * Rebuilds the tiles from the map art and invalidates the cached layer.
+   * Called by redraw once one of the art files has been reloaded.
+   */
+  public synchronized void reloadArt() {
+    loadedArtVersion = artVersion;
+    if (customBackground) {
+      // drawn from its own image, not from the tiles
+      return;
+    }
+    loadMapArt();
+    invalidate();
+  }
+
+  /**
+   * @return the number of full prerender passes done so far
+   */
+  public int getPrerenderCount() {
+    return prerenderCount;
   }
 
   public void prerenderMap(battlecode.world.GameMap m) {
@@ -109,10 +193,15 @@ public class DrawMap {
       }
     }
     g2.dispose();
+    prerenderCount++;
+    dirty = false;
   }
 
   public void prerenderMap(BufferedImage bg) {
     prerender = bg;
+    customBackground = true;
+    prerenderCount++;
+    dirty = false;
   }
 
   public int getMapWidth() {
@@ -124,26 +213,41 @@ public class DrawMap {
   }
 
   public void draw(Graphics2D g2, DrawState ds) {
-    AffineTransform pushed = g2.getTransform();
+    draw(g2, ds, new Rectangle2D.Float(0, 0, mapWidth, mapHeight));
+  }
+
+  /**
+   * Draws the part of the map within view, which is in squares from the
+   * corner of the map.
+   */
+  public synchronized void draw(Graphics2D g2, DrawState ds, Rectangle2D view) {
+    int x0 = Math.max(0, (int) Math.floor(view.getMinX()));
+    int y0 = Math.max(0, (int) Math.floor(view.getMinY()));
+    int x1 = Math.min(mapWidth, (int) Math.ceil(view.getMaxX()));
+    int y1 = Math.min(mapHeight, (int) Math.ceil(view.getMaxY()));
+    if (x0 >= x1 || y0 >= y1) {
+      return;
+    }
 
     g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
     
-    g2.scale(1.0 / locPixelWidth, 1.0 / locPixelWidth);
-   
-    g2.drawImage(prerender, null, null);
+    g2.drawImage(prerender, x0, y0, x1, y1,
+                 x0 * locPixelWidth, y0 * locPixelWidth,
+                 x1 * locPixelWidth, y1 * locPixelWidth, null);
     
-    g2.setTransform(pushed);
     if (RenderConfiguration.showGridlines()) {
-      g2.setColor(new Color(0.7f, 0.7f, 0.7f, 1.0f));
+      g2.setColor(gridColor);
       g2.setStroke(gridStroke);
-      Line2D.Float gridline = new Line2D.Float(0, 0, 0, mapHeight);
-      for (int i = 1; i < mapWidth; i += 1) {
+      Line2D.Float gridline = this.gridline;
+      gridline.y1 = y0;
+      gridline.y2 = y1;
+      for (int i = Math.max(1, x0); i < Math.min(mapWidth, x1 + 1); i += 1) {
         gridline.x1 = gridline.x2 = i;
         g2.draw(gridline);
       }
-      gridline.x1 = 0;
-      gridline.x2 = mapWidth;
-      for (int i = 1; i < mapHeight; i += 1) {
+      gridline.x1 = x0;
+      gridline.x2 = x1;
+      for (int i = Math.max(1, y0); i < Math.min(mapHeight, y1 + 1); i += 1) {
         gridline.y1 = gridline.y2 = i;
         g2.draw(gridline);
       }
@@ -160,13 +264,11 @@ public class DrawMap {
   public void loadMapArt()  {
     TerrainTile[][] map = m.getTerrainMatrix();
 
-    mapBG = (new ImageFile ("art/map_bg.png")).image;
+    mapBG = bgFile.image;
 
     // set up the road tiles
-    ImageFile roadImg = new ImageFile("art/roads.png"); // actual rendering
-    ImageFile voidImg = new ImageFile("art/innervoid.png"); // actual rendering
-    BufferedImage roadAtlas = roadImg.image;
-    BufferedImage voidAtlas = voidImg.image;
+    BufferedImage roadAtlas = roadFile.image;
+    BufferedImage voidAtlas = voidFile.image;
     locPixelWidth = roadAtlas.getWidth() / roadTileCount;
     int subtileYPixels = locPixelWidth / subtileHeight;
       
@@ -271,6 +373,5 @@ public class DrawMap {
             }
         }
       }
-    roadImg.unload();
   }
 }
@@ -20,6 +20,7 @@ import battlecode.client.util.ImageFile;
 import battlecode.client.util.ImageResource;
 import battlecode.client.viewer.AbstractAnimation;
 import battlecode.client.viewer.AbstractDrawObject;
+import battlecode.client.viewer.RobotStateStore;
 import battlecode.client.viewer.ActionType;
 import battlecode.common.GameConstants;
 import battlecode.common.MapLocation;
@@ -66,6 +67,38 @@ class DrawObject extends AbstractDrawObject<Animation> {
   private static final double artilleryRadius = 0;//Math.sqrt(GameConstants.ARTILLERY_SPLASH_RADIUS_SQUARED);
   private static final Color shieldColor = new Color(150,150,255,150);
   private static final Color regenColor = new Color(150,255,150,150);
+  private static final Color teamAColor = Color.RED.brighter().brighter().brighter();
+  private static final Color teamBColor = Color.BLUE.brighter().brighter().brighter();
+  private static final Color miningColor = new Color(1.0f, 0, 0.8f);
+  private static final Color miningStoppingColor = new Color(1.0f, 0.0f, 0.0f);
+  private static final Color capturingColor = new Color(0.3f, 0.3f, 1.0f);
+
+  // bar colors by fraction, in BAR_STEPS steps, so that drawing a bar
+  // doesn't allocate a Color
+  private static final int BAR_STEPS = 64;
+  private static final Color[] energonColors = new Color[BAR_STEPS + 1];
+  private static final Color[] energonOffColors = new Color[BAR_STEPS + 1];
+  private static final Color[] shieldColors = new Color[BAR_STEPS + 1];
+  private static final int BROADCAST_RINGS = 20;
+  private static final Color[] broadcastColors = new Color[BROADCAST_RINGS];
+
+  static {
+    for (int i = 0; i <= BAR_STEPS; i++) {
+      float frac = (float) i / BAR_STEPS;
+      energonColors[i] = new Color(Math.min(1 - 0.5f * frac, 1.5f - 1.5f * frac),
+                                   Math.min(1.5f * frac, 0.5f + 0.5f * frac), 0);
+      energonOffColors[i] = new Color(.5f - .5f * frac, .5f - .5f * frac, .5f + .5f * frac);
+      shieldColors[i] = new Color(.5f * frac, .5f * frac, .5f + .5f * frac);
+    }
+    for (int i = 0; i < BROADCAST_RINGS; i++) {
+      broadcastColors[i] = new Color(1, 0, 1, 0.05f * (BROADCAST_RINGS - i));
+    }
+  }
+
+  // reused by every robot; robots are only drawn from one thread
+  private static final Rectangle2D.Float bar = new Rectangle2D.Float();
+  private static final Ellipse2D.Double ring = new Ellipse2D.Double();
+  private static final Line2D.Double line = new Line2D.Double();
   private final DrawState overallstate;
     
   public static final ImageFile[] hatImages;
@@ -103,6 +136,30 @@ class DrawObject extends AbstractDrawObject<Animation> {
     overallstate = copy.overallstate;
   }
 
+  @Override
+  protected void writeState(RobotStateStore store, int slot) {
+    super.writeState(store, slot);
+    store.setRef(slot, 0, img);
+    store.setRef(slot, 1, preEvolve);
+    store.setRef(slot, 2, teleportLoc);
+    store.setRef(slot, 3, rtype);
+    store.setInt(slot, 0, teleportRounds);
+  }
+
+  @Override
+  protected void readState(RobotStateStore store, int slot) {
+    super.readState(store, slot);
+    img = (ImageFile) store.getRef(slot, 0);
+    preEvolve = (ImageFile) store.getRef(slot, 1);
+    teleportLoc = (MapLocation) store.getRef(slot, 2);
+    rtype = (RobotType) store.getRef(slot, 3);
+    teleportRounds = store.getInt(slot, 0);
+    if (animations.containsKey(ENERGON_TRANSFER)) {
+      EnergonTransferAnim a = (EnergonTransferAnim) animations.get(ENERGON_TRANSFER);
+      a.setSource(this);
+    }
+  }
+
   public static void loadAll() {
     for (RobotType type : RobotType.values()) {
       for (Team team : Team.values()) {
@@ -110,7 +167,11 @@ class DrawObject extends AbstractDrawObject<Animation> {
           continue;
           }*/
         RobotInfo robotInfo = new RobotInfo(type, team);
-        ir.getResource(robotInfo, getAvatarPath(robotInfo));
+        ImageFile file = ir.getResource(robotInfo, getAvatarPath(robotInfo));
+        if (type == RobotType.SOLDIER && file.image != null) {
+          // cut the sprite sheet now rather than on the first draw
+          SpriteCache.frames(file.image);
+        }
       }
     }
   }
@@ -145,18 +206,14 @@ class DrawObject extends AbstractDrawObject<Animation> {
             int distSq = i * i + j * j;
             if (distSq <= viewrange) {
               if (inAngleRange(i, j, info.type.sensorCosHalfTheta)) {
-                AffineTransform trans = AffineTransform.getTranslateInstance(i, j);
-                trans.scale(1.0 / sensorImg.getWidth(), 1.0 / sensorImg.getHeight());
-                g2.drawImage(sensorImg, trans, null);
+                SpriteCache.draw(g2, sensorImg, i, j, 1, 1);
               }
             }
             if ((info.type.canAttack)
                 && info.type.attackRadiusMinSquared <= distSq
                 && distSq <= info.type.attackRadiusMaxSquared
                 && inAngleRange(i, j, info.type.attackCosHalfTheta)) {
-              AffineTransform trans = AffineTransform.getTranslateInstance(i, j);
-              trans.scale(1.0 / attackImg.getWidth(), 1.0 / attackImg.getHeight());
-              g2.drawImage(attackImg, trans, null);
+              SpriteCache.draw(g2, attackImg, i, j, 1, 1);
             }
           }
       } catch (NullPointerException npe) {
@@ -187,25 +244,56 @@ class DrawObject extends AbstractDrawObject<Animation> {
     }
   }
 
+  // how far past its square anything drawn around a robot reaches, not
+  // counting hats and attack lines
+  private static final double REACH = 3;
+  private static final Rectangle2D.Double lineView = new Rectangle2D.Double();
+
+  /**
+   * @return whether anything draw draws for this robot may be within view,
+   * which is in map coordinates
+   */
+  boolean isVisibleIn(Rectangle2D view) {
+    double x = getDrawX(), y = getDrawY();
+    // hats stack up from the top of the sprite
+    double above = Math.max(REACH, (RenderConfiguration.showHats() ? 1.5 * hats.length() : 0));
+    if (x + 1 + REACH > view.getMinX() && x - REACH < view.getMaxX()
+        && y + 1 + REACH > view.getMinY() && y - above < view.getMaxY()) {
+      return true;
+    }
+    // attack lines and crosshairs reach the target
+    if (targetLoc != null && isAttacking() && RenderConfiguration.showAttack()) {
+      lineView.setFrame(view.getX() - 1, view.getY() - 1, view.getWidth() + 2, view.getHeight() + 2);
+      return lineView.intersectsLine(x + 0.5, y + 0.5, targetLoc.x + 0.5, targetLoc.y + 0.5);
+    }
+    return false;
+  }
+
+  private static Color barColor(Color[] colors, float frac) {
+    return colors[Math.round(Math.max(0, Math.min(frac, 1)) * BAR_STEPS)];
+  }
+
   public void draw(Graphics2D g2, boolean focused) {
 
     if (RenderConfiguration.showRangeHatch() && focused) {
       drawRangeHatch(g2);
     }
 
-    AffineTransform pushed = g2.getTransform();
+    // translate back instead of saving the transform, which would copy it
+    double drawX = getDrawX(), drawY = getDrawY();
     { // push
-      g2.translate(getDrawX(), getDrawY());
+      g2.translate(drawX, drawY);
       drawImmediate(g2, focused);
 
       if (broadcast != 0x00 && RenderConfiguration.showBroadcast()) {
         g2.setStroke(broadcastStroke);
         double drdR = visualBroadcastRadius * 0.05; // dradius/dRound
-        for (int i = 0; i < 20; i++) {
+        for (int i = 0; i < BROADCAST_RINGS; i++) {
           if ((broadcast & (1 << i)) != 0x00) {
             double r = i * drdR;
-            g2.setColor(new Color(1, 0, 1, 0.05f * (20 - i)));
-            g2.draw(new Ellipse2D.Double(0.5 - r, 0.5 - r, 2 * r, 2 * r));
+            g2.setColor(broadcastColors[i]);
+            ring.setFrame(0.5 - r, 0.5 - r, 2 * r, 2 * r);
+            g2.draw(ring);
           }
         }
       }
@@ -216,7 +304,7 @@ class DrawObject extends AbstractDrawObject<Animation> {
 //				g2.draw(new Ellipse2D.Double(.5-regenRadius,.5-regenRadius,2*regenRadius,2*regenRadius));
 //			}
     }
-    g2.setTransform(pushed); // pop
+    g2.translate(-drawX, -drawY); // pop
     // these animations shouldn't be drawn in the HUD, and they expect
     // the origin of the Graphics2D to be the MapLocation (0,0)
     for (AbstractAnimation.AnimationType type : postDrawOrder) {
@@ -228,8 +316,7 @@ class DrawObject extends AbstractDrawObject<Animation> {
   }
 
   public void drawImmediate(Graphics2D g2, boolean drawOutline, boolean isHUD) {
-    Color c = getTeam() == Team.A ? Color.RED : Color.BLUE;
-    c = c.brighter().brighter().brighter();
+    Color c = getTeam() == Team.A ? teamAColor : teamBColor;
     // these animations should be drawn in the HUD, and they expect
     // the origin of the Grpahics2D to be this robot's position
     for (AbstractAnimation.AnimationType type : preDrawOrder) {
@@ -252,30 +339,20 @@ class DrawObject extends AbstractDrawObject<Animation> {
       boolean showFlux = (RenderConfiguration.showFlux() || drawOutline);
 
       if (showEnergon) {
-        Rectangle2D.Float rect = new Rectangle2D.Float(0, 1, 1, 0.15f);
+        Rectangle2D.Float rect = bar;
+        rect.setRect(0, 1, 1, 0.15f);
         g2.setColor(Color.BLACK);
         g2.fill(rect);
         float frac = Math.min((float) (energon / maxEnergon), 1);
         rect.width = frac;
-        if (frac < 0)
-          frac = 0;
-        if (turnedOn) {
-          g2.setColor(new Color(Math.min(1 - 0.5f * frac, 1.5f - 1.5f * frac),
-                                Math.min(1.5f * frac, 0.5f + 0.5f * frac), 0));
-        } else {
-          g2.setColor(new Color(.5f - .5f * frac, .5f - .5f * frac, .5f + .5f * frac));
-        }
+        g2.setColor(barColor(turnedOn ? energonColors : energonOffColors, frac));
         g2.fill(rect);
                 
         // drawing shields
         {
           frac = Math.min((float)(shields/maxEnergon), 1);
-          rect = new Rectangle2D.Float(0, 1, 1.0f, 0.075f);
-          rect.width = frac;
-                	
-          if (frac < 0)
-            frac = 0;
-          g2.setColor(new Color(.5f * frac, .5f * frac, .5f + .5f * frac));
+          rect.setRect(0, 1, frac, 0.075f);
+          g2.setColor(barColor(shieldColors, frac));
           g2.fill(rect);
         }
       }
@@ -298,11 +375,11 @@ class DrawObject extends AbstractDrawObject<Animation> {
 			
       // actions
       if (actionAction != null && actionAction != ActionType.IDLE) {
-        Rectangle2D.Float rect;
+        Rectangle2D.Float rect = bar;
         if(showEnergon)
-          rect = new Rectangle2D.Float(0, 1.15f, 1, 0.15f);
+          rect.setRect(0, 1.15f, 1, 0.15f);
         else
-          rect = new Rectangle2D.Float(0, 1, 1, 0.15f);
+          rect.setRect(0, 1, 1, 0.15f);
         g2.setColor(Color.BLACK);
         g2.fill(rect);
         float frac = Math.min(1-((float)roundsUntilActionIdle / Math.max(totalActionRounds,1)), 1);
@@ -313,67 +390,62 @@ class DrawObject extends AbstractDrawObject<Animation> {
           frac = 0;
         switch (actionAction)
         {
-        case MINING:			g2.setColor(new Color(1.0f, 0, 0.8f)); 		break;
-        case MININGSTOPPING: 	g2.setColor(new Color(1.0f, 0.0f, 0.0f)); 	break;
+        case MINING:			g2.setColor(miningColor); 					break;
+        case MININGSTOPPING: 	g2.setColor(miningStoppingColor); 			break;
         case DEFUSING: 			g2.setColor(Color.cyan); 					break;
-        case CAPTURING: 		g2.setColor(new Color(0.3f, 0.3f, 1.0f)); 	break;
+        case CAPTURING: 		g2.setColor(capturingColor); 				break;
         default:;
         }
 //                g2.setColor(new Color(frac,0,.5f+.5f*frac));
         g2.fill(rect);
       }
 
-       // could be used for rotations or such, remember origin for rotation
-      AffineTransform trans = new AffineTransform();
-
       assert preEvolve != null;
       BufferedImage image = getTypeSprite();
       // load soldier from a horizontal sprite sheet
-      if (getType() == RobotType.SOLDIER) {
+      if (getType() == RobotType.SOLDIER && image != null) {
         // sprite sheet is East 0, clockwise
         // direction sheet is North 0, clockwise
         int sheetIndex = (dir.ordinal() - Direction.EAST.ordinal() + 8) % 8;
-        int soldierHeight = image.getHeight();
         if (!isAttacking()) {
           sheetIndex += 8;
         }
-        image = image.getSubimage(sheetIndex * soldierHeight, 0,
-                                  soldierHeight, soldierHeight);
+        image = SpriteCache.frames(image)[sheetIndex];
       }
       
       if (image != null) {
-        if (isHUD) {
-          trans.scale(1.0 / image.getWidth(), 1.0 / image.getHeight());
-        } else {
-          trans.scale((1.0 / image.getWidth()) * this.getRelativeSize(), (1.0 / image.getHeight()) * this.getRelativeSize());
-        }
-        
         //PASTR capture ranges
         if (getType() == RobotType.PASTR) {
           g2.setColor(c);
           g2.setStroke(broadcastStroke);
           int size = (int)(Math.pow(GameConstants.PASTR_RANGE, .5) * 2);
-          g2.draw(new Ellipse2D.Float(-.5f * (size - 1), -.5f * (size - 1), size, size));
+          ring.setFrame(-.5f * (size - 1), -.5f * (size - 1), size, size);
+          g2.draw(ring);
         }
         
-        g2.drawImage(image, trans, null);
+        if (isHUD) {
+          // the HUD isn't drawn at the sprite size, so there is no point
+          // in a scaled copy
+          AffineTransform trans = AffineTransform.getScaleInstance(1.0 / image.getWidth(), 1.0 / image.getHeight());
+          g2.drawImage(image, trans, null);
+        } else {
+          SpriteCache.draw(g2, image, 0, 0, getRelativeSize(), getRelativeSize());
+        }
 
         // hats
         if (RenderConfiguration.showHats()) {
           double hatscale = 1.5;
-          AffineTransform pushed = g2.getTransform();
-          g2.translate((2.0-hatscale)/4.0, 0.2);
           double width = image.getWidth();
-          trans = AffineTransform.getScaleInstance(hatscale/image.getWidth() * this.getRelativeSize(), hatscale/image.getWidth() * this.getRelativeSize());
+          double scale = hatscale/width * this.getRelativeSize();
+          double x0 = (2.0-hatscale)/4.0, y0 = 0.2;
           for (int x=0; x<hats.length(); x++)
           {
                 		
             image = hatImages[(int)hats.charAt(x)].image;
-            g2.translate(0, -hatscale/width*(image.getHeight()-2));
-            g2.drawImage(image, trans, null);
+            y0 -= hatscale/width*(image.getHeight()-2);
+            SpriteCache.draw(g2, image, x0, y0, image.getWidth() * scale, image.getHeight() * scale);
                 		
           }
-          g2.setTransform(pushed);
         }
       } else {
         //System.out.println("null image in DrawObject.drawImmediate");
@@ -385,14 +457,15 @@ class DrawObject extends AbstractDrawObject<Animation> {
         {
           g2.setColor(c);
           g2.setStroke(thickStroke);
-          g2.draw(new Line2D.Double(0.5, 0.5,
-                                    0.5 - dir.dx, 0.5 - dir.dy));
+          line.setLine(0.5, 0.5, 0.5 - dir.dx, 0.5 - dir.dy);
+          g2.draw(line);
         }
         if (targetLoc!=null && actionAction==ActionType.DEFUSING)
         {
           g2.setColor(Color.cyan);
           g2.setStroke(mediumStroke);
-          g2.draw(new Line2D.Double(0.5, 0.5, targetLoc.x-loc.x+0.5, targetLoc.y-loc.y+0.5));
+          line.setLine(0.5, 0.5, targetLoc.x-loc.x+0.5, targetLoc.y-loc.y+0.5);
+          g2.draw(line);
         }
       }
     }
@@ -437,21 +510,21 @@ class DrawObject extends AbstractDrawObject<Animation> {
             target = crosshairBlue.image;
           }
           if (target != null) {
-            AffineTransform trans = AffineTransform.getTranslateInstance(targetLoc.x, targetLoc.y);
-            trans.scale(1.0 / target.getWidth(), 1.0 / target.getHeight());
-            g2.drawImage(target, trans, null);
+            SpriteCache.draw(g2, target, targetLoc.x, targetLoc.y, 1, 1);
           }
 
-          g2.draw(new Line2D.Double(getDrawX() + 0.5, getDrawY() + 0.5,
-                                    targetLoc.x + 0.5, targetLoc.y + 0.5));
+          line.setLine(getDrawX() + 0.5, getDrawY() + 0.5,
+                       targetLoc.x + 0.5, targetLoc.y + 0.5);
+          g2.draw(line);
         }
       } else {
         switch (rtype) {
         case NOISETOWER:
         case SOLDIER:
           //g2.draw(new Ellipse2D.Double(getDrawX()+.5-soldierRadius,getDrawY()+.5-soldierRadius,2*soldierRadius,2*soldierRadius));
-          g2.draw(new Line2D.Double(getDrawX() + 0.5, getDrawY() + 0.5,
-                                    targetLoc.x + 0.5, targetLoc.y + 0.5));
+          line.setLine(getDrawX() + 0.5, getDrawY() + 0.5,
+                       targetLoc.x + 0.5, targetLoc.y + 0.5);
+          g2.draw(line);
 
           break;
         case HQ:
@@ -464,14 +537,14 @@ class DrawObject extends AbstractDrawObject<Animation> {
               target = crosshairBlue.image;
             }
             if (target != null) {
-              AffineTransform trans = AffineTransform.getTranslateInstance(targetLoc.x, targetLoc.y);
-              trans.scale(1.0 / target.getWidth(), 1.0 / target.getHeight());
-              g2.drawImage(target, trans, null);
+              SpriteCache.draw(g2, target, targetLoc.x, targetLoc.y, 1, 1);
             }
 
-            g2.draw(new Line2D.Double(getDrawX() + 0.5, getDrawY() + 0.5,
-                                      targetLoc.x + 0.5, targetLoc.y + 0.5));
-            g2.draw(new Ellipse2D.Double(targetLoc.x+.5-artilleryRadius,targetLoc.y+.5-artilleryRadius,2*artilleryRadius,2*artilleryRadius));
+            line.setLine(getDrawX() + 0.5, getDrawY() + 0.5,
+                         targetLoc.x + 0.5, targetLoc.y + 0.5);
+            g2.draw(line);
+            ring.setFrame(targetLoc.x+.5-artilleryRadius,targetLoc.y+.5-artilleryRadius,2*artilleryRadius,2*artilleryRadius);
+            g2.draw(ring);
           }
             		
           break;
@@ -6,6 +6,8 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -18,6 +20,7 @@ import battlecode.client.viewer.AbstractDrawState;
 import battlecode.client.viewer.DebugState;
 import battlecode.client.viewer.FluxDepositState;
 import battlecode.client.viewer.GameStateFactory;
+import battlecode.client.viewer.RobotTable;
 import battlecode.common.MapLocation;
 import battlecode.common.RobotType;
 import battlecode.common.Team;
@@ -40,6 +43,7 @@ public class DrawState extends AbstractDrawState<DrawObject> {
   protected static final Color linkA = new Color(1.f,0.f,0.f);
   protected static final Color linkB = new Color(0.f,0.f,1.f);
   protected static final Color linkBoth = new Color(.75f,0.f,.75f);
+  private static final Team[] nukeTeams = {Team.A, Team.B};
   protected static final ImageFile encampment = new ImageFile("art/encampment.png");
 
   private static class Factory implements GameStateFactory<DrawState> {
@@ -52,6 +56,12 @@ public class DrawState extends AbstractDrawState<DrawObject> {
       return new DrawState(state);
     }
 
+    public DrawState cloneKeyFrame(DrawState state, DrawState previousKeyFrame) {
+      DrawState clone = new DrawState();
+      clone.freezeStateFrom(state, previousKeyFrame);
+      return clone;
+    }
+
     public void copyState(DrawState src, DrawState dst) {
       dst.copyStateFrom(src);
     }
@@ -64,12 +74,24 @@ public class DrawState extends AbstractDrawState<DrawObject> {
   // so don't draw them from DrawObjects
   //private ArrayList<TeleportAnim> teleportAnims;
   private MapLocation[][] convexHullsA, convexHullsB;
+  // the cow layer, kept until the densities, their teams or the settings
+  // change, with one block of cowScale x cowScale pixels per square
+  private BufferedImage cowImage = null;
+  private int[] cowPixels;
+  private int cowScale;
+  private int[][] cowImageDensity = null;
+  private int[][] cowImageTeam = null;
+  private boolean cowImageTeamSet;
+  private boolean cowImageThresh;
+  private int cowImageRound;
+  // team bits of the robots harvesting each square, when not sent
+  private int[][] cowOwners = null;
   // number of blocks in current draw state
   //int[][] blockNumber;
 
   public DrawState() {
-    groundUnits = new LinkedHashMap<Integer, DrawObject>();
-    airUnits = new LinkedHashMap<Integer, DrawObject>();
+    groundUnits = new RobotTable<DrawObject>();
+    airUnits = new RobotTable<DrawObject>();
     encampments = new HashSet<MapLocation>();
     towers = new LinkedList<DrawObject>();
     fluxDeposits = new LinkedHashMap<Integer, FluxDepositState>();
@@ -89,6 +111,25 @@ public class DrawState extends AbstractDrawState<DrawObject> {
     copyStateFrom(clone);
   }
 
+  /**
+   * Makes this state a copy of src to draw from, while src goes on changing
+   * on other threads. src is only locked while its robots are saved into
+   * keyframe, which is then restored into this state without the lock. The
+   * robots of this state keep their objects, and their animations, from
+   * one call to the next.
+   *
+   * The caller alternates between two keyframes, passing the one given
+   * last time as lastKeyframe. keyframe then shares the chunks of robots
+   * that haven't changed with it, and if none has, the robots of this state
+   * are not restored at all.
+   */
+  public void copyForDrawing(DrawState src, DrawState keyframe, DrawState lastKeyframe) {
+    synchronized (src) {
+      keyframe.freezeStateFrom(src, lastKeyframe);
+    }
+    copyStateFrom(keyframe, lastKeyframe);
+  }
+
   protected DrawObject createDrawObject(RobotType type, Team team, int id) {
     return new DrawObject(type, team, id, this);
   }
@@ -105,10 +146,6 @@ public class DrawState extends AbstractDrawState<DrawObject> {
     return convexHullsB;
   }
     
-  public double getTeamResources(Team t) {
-    return teamResources[t.ordinal()];
-  }
-
   public double getResearchProgress(Team t, int i) {
     return researchProgress[t.ordinal()][i];
   }
@@ -139,10 +176,163 @@ public class DrawState extends AbstractDrawState<DrawObject> {
     */
   }
 
+  // by position rather than with an iterator, so that a frame allocates
+  // nothing per robot
+  private void drawUnits(Graphics2D g2, DebugState debug, RobotTable<DrawObject> units,
+                         int dragID, int focusID, int hoverID) {
+    Rectangle2D view = RenderConfiguration.getInstance().getVisibleMapBounds();
+    for (int i = 0, n = units.positions(); i < n; i++) {
+      DrawObject obj = units.valueAt(i);
+      if (obj == null || obj.inTransport()) {
+        continue;
+      }
+      int id = units.idAt(i);
+      // the focused robot may have its range drawn from outside the view
+      if (id != focusID && id != dragID && !obj.isVisibleIn(view)) {
+        continue;
+      }
+      if (id == dragID) {
+        drawDragged(g2, debug, obj);
+      } else {
+        obj.draw(g2, id == focusID || id == hoverID);
+      }
+    }
+  }
+
+  private void drawCows(Graphics2D g2) {
+    if (!RenderConfiguration.showCows()
+        || neutralsDensity.length == 0 || neutralsDensity[0].length == 0) {
+      return;
+    }
+    boolean thresh = RenderConfiguration.threshCows();
+    // the arrays are replaced, never modified, by the neutrals signals
+    if (cowImage == null || cowImageDensity != neutralsDensity
+        || cowImageTeam != neutralsTeam || cowImageTeamSet != neutralsTeamSet
+        || cowImageThresh != thresh
+        || (!neutralsTeamSet && cowImageRound != currentRound)) {
+      buildCowImage(thresh);
+    }
+    // only the squares in view
+    Rectangle2D view = RenderConfiguration.getInstance().getVisibleMapBounds();
+    int width = neutralsDensity.length, height = neutralsDensity[0].length;
+    int x0 = Math.max(0, (int) Math.floor(view.getMinX()));
+    int y0 = Math.max(0, (int) Math.floor(view.getMinY()));
+    int x1 = Math.min(width, (int) Math.ceil(view.getMaxX()));
+    int y1 = Math.min(height, (int) Math.ceil(view.getMaxY()));
+    if (x0 < x1 && y0 < y1) {
+      g2.drawImage(cowImage, x0, y0, x1, y1,
+                   x0 * cowScale, y0 * cowScale, x1 * cowScale, y1 * cowScale, null);
+    }
+  }
+
+  private void buildCowImage(boolean thresh) {
+    int width = neutralsDensity.length;
+    int height = neutralsDensity[0].length;
+    int scale = Math.max(2, Math.min(8, 800 / Math.max(width, height)));
+    if (cowImage == null || cowScale != scale
+        || cowImage.getWidth() != width * scale || cowImage.getHeight() != height * scale) {
+      cowImage = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_ARGB);
+      cowPixels = ((DataBufferInt) cowImage.getRaster().getDataBuffer()).getData();
+      cowScale = scale;
+    } else {
+      Arrays.fill(cowPixels, 0);
+    }
+    if (!neutralsTeamSet) {
+      findCowOwners(width, height);
+    }
+
+    double maxDensity = 0.0;
+    for (int i = 0; i < width; i++) {
+      for (int j = 0; j < height; j++) {
+        maxDensity = Math.max(maxDensity, neutralsDensity[i][j]);
+      }
+    }
+
+    double thresholdDensity = Math.max(1 / (1 - GameConstants.NEUTRALS_TURN_DECAY), .1 * maxDensity);
+    if (thresh) {
+      maxDensity -= thresholdDensity;
+    }
+
+    int stride = width * scale;
+    for (int i = 0; i < width; i++) {
+      for (int j = 0; j < height; j++) {
+        double density = (int)neutralsDensity[i][j];
+        if (thresh) {
+          if (density < thresholdDensity) continue;
+          else density -= thresholdDensity;
+        }
+        // cap at the max possible size
+        float maxPossible = 2000;
+        float size = (float) Math.min(Math.sqrt(density / maxPossible), 1.0f);
+        if (size <= 0) {
+          continue;
+        }
+        int owners = (neutralsTeamSet ? neutralsTeam[i][j] : cowOwners[i][j]);
+        boolean harvRed = (owners == 1 || owners == 3);
+        boolean harvBlue = (owners == 2 || owners == 3);
+        float lum = (float)(.5 * density / maxDensity + .25);
+        lum = Math.max(Math.min(lum, 1.0f), 0.0f);
+        int c = (int) (lum * 255 + 0.5f);
+        int argb = 0xFF000000
+          | (harvRed ? c << 16 : 0)
+          | (!(harvRed || harvBlue) ? c << 8 : 0)
+          | (harvBlue ? c : 0);
+        // make appear at the center
+        int block = Math.max(1, Math.round(size * scale));
+        int offset = (scale - block) / 2;
+        int start = (j * scale + offset) * stride + i * scale + offset;
+        for (int y = 0; y < block; y++) {
+          Arrays.fill(cowPixels, start + y * stride, start + y * stride + block, argb);
+        }
+      }
+    }
+
+    cowImageDensity = neutralsDensity;
+    cowImageTeam = neutralsTeam;
+    cowImageTeamSet = neutralsTeamSet;
+    cowImageThresh = thresh;
+    cowImageRound = currentRound;
+  }
+
+  /**
+   * Marks the squares that soldiers stand on and that pastrs are in range
+   * of, in one pass over the robots: bit 1 for team A, bit 2 for the others.
+   */
+  private void findCowOwners(int width, int height) {
+    if (cowOwners == null || cowOwners.length != width || cowOwners[0].length != height) {
+      cowOwners = new int[width][height];
+    } else {
+      for (int i = 0; i < width; i++) {
+        Arrays.fill(cowOwners[i], 0);
+      }
+    }
+    int rangeSquared = (int) GameConstants.PASTR_RANGE;
+    for (int k = 0, n = groundUnits.positions(); k < n; k++) {
+      DrawObject unit = groundUnits.valueAt(k);
+      if (unit == null) {
+        continue;
+      }
+      int range;
+      if (unit.getType() == RobotType.SOLDIER) range = 0;
+      else if (unit.getType() == RobotType.PASTR) range = (int) Math.sqrt(rangeSquared);
+      else continue;
+      int bit = (unit.getTeam() == Team.A ? 1 : 2);
+      MapLocation loc = unit.getLocation();
+      for (int i = Math.max(0, loc.x - range); i <= Math.min(width - 1, loc.x + range); i++) {
+        for (int j = Math.max(0, loc.y - range); j <= Math.min(height - 1, loc.y + range); j++) {
+          int dx = i - loc.x, dy = j - loc.y;
+          if (dx * dx + dy * dy <= rangeSquared) {
+            cowOwners[i][j] |= bit;
+          }
+        }
+      }
+    }
+  }
+
   /**
-   * Draws the current game state. This method is always called from the
-   * Swing event-dispatch thread, and in particular blocks calls to
-   * updateRound.
+   * Draws the current game state. GameRenderer calls this from the render
+   * thread on its own copy of the timeline's state, made with
+   * copyForDrawing, so drawing doesn't hold up updateRound.
    * @param g2 The graphics context, transformed to MapLocation-space
    * @param debug The debug state, including MapLocation-space mouse state
    */
@@ -185,67 +375,7 @@ public class DrawState extends AbstractDrawState<DrawObject> {
 //		}
       
 
-      // cow densities
-      double maxDensity = 0.0;
-      for (int i = 0; i < neutralsDensity.length && RenderConfiguration.showCows(); i++) {
-        for (int j = 0; j < neutralsDensity[0].length; j++) {
-          maxDensity = Math.max(maxDensity, neutralsDensity[i][j]);
-        }
-      }
-      
-      double thresholdDensity = Math.max(1 / (1 - GameConstants.NEUTRALS_TURN_DECAY), .1 * maxDensity);
-      if (RenderConfiguration.threshCows()) {
-        maxDensity -= thresholdDensity;
-      }
-      
-      for (int i = 0; i < neutralsDensity.length && RenderConfiguration.showCows(); i++) {
-        for (int j = 0; j < neutralsDensity[0].length; j++) {
-          //obtain color by checking proximity to pastrs
-          boolean harvBlue = false, harvRed = false;
-          double density = (int)neutralsDensity[i][j];
-          if(RenderConfiguration.threshCows()) {
-            if(density < thresholdDensity) continue;
-            else density -= thresholdDensity;
-          }
-          if (neutralsTeamSet) {
-              switch (neutralsTeam[i][j]) {
-                case 1: harvRed = true; break;
-                case 2: harvBlue = true; break;
-                case 3: harvRed = true; harvBlue = true;
-                default: break;
-              }
-          } else {
-              for (Map.Entry<Integer, DrawObject> gUnitEnt : groundUnits.entrySet())
-              {
-                DrawObject gUnit = gUnitEnt.getValue();
-                double checkRadiusSqr = 0;
-                if(gUnit.getType() == RobotType.SOLDIER) checkRadiusSqr = .1;
-                else if(gUnit.getType() == RobotType.PASTR) checkRadiusSqr = Math.pow(GameConstants.PASTR_RANGE, 1);
-                else continue;
-                MapLocation groundLoc = gUnit.getLocation();
-                //distance check
-                double distSqrToRobot = Math.pow(groundLoc.x - i, 2) + Math.pow(groundLoc.y - j, 2);
-                if(distSqrToRobot <= checkRadiusSqr) {
-                  if (gUnit.getTeam() == Team.A) harvRed = true;
-                  else harvBlue = true;
-                  if(harvBlue && harvRed) continue;
-                }
-              }
-          }
-          float lum = (float)(.5 * density / maxDensity + .25);
-          lum = Math.max(Math.min(lum, 1.0f), 0.0f);
-          float r = harvRed ? lum : 0;
-          float b = harvBlue ? lum : 0;
-          float g = !(harvRed || harvBlue) ? lum : 0;
-          g2.setColor(new Color(r, g, b, 1.0f));
-          // cap at the max possible size
-          float maxPossible = 2000;
-          float size = (float) Math.min(Math.sqrt(density / maxPossible), 1.0f);
-          // make appear at the center
-          float offset = ((1.0f - size) / 2);
-          g2.fill(new Rectangle2D.Float(i + offset, j + offset, size, size));
-        }
-      }
+      drawCows(g2);
 
       /*
       for (Entry<MapLocation, Team> entry : mineLocs.entrySet()) {
@@ -279,27 +409,22 @@ public class DrawState extends AbstractDrawState<DrawObject> {
 
 //		g2.setTransform(pushed2);
 
-      for (Map.Entry<Integer, DrawObject> entry : drawableSet) {
-
-        int id = entry.getKey();
-        DrawObject obj = entry.getValue();
-        if(obj.inTransport()) continue;
+      DrawObject hover = findDrawnRobotAt(debug.getX(), debug.getY());
+      if (hover != null && hover.getID() != dragID) {
+        hoverID = hover.getID();
+        hoverLoc = hover.getLocation();
+        controlBits = hover.getControlBits();
+      }
 
-        if (id == dragID) {
-          drawDragged(g2, debug, obj);
-        } else {
-          if (Math.abs(debug.getX() - obj.getDrawX() - 0.5) < 0.5
-              && Math.abs(debug.getY() - obj.getDrawY() - 0.5) < 0.5) {
-            hoverID = id;
-            hoverLoc = obj.getLocation();
-            controlBits = obj.getControlBits();
-          }
-          obj.draw(g2, id == focusID || id == hoverID);
-        }
+      if (RenderConfiguration.showGround()) {
+        drawUnits(g2, debug, groundUnits, dragID, focusID, hoverID);
+      }
+      if (RenderConfiguration.showAir()) {
+        drawUnits(g2, debug, airUnits, dragID, focusID, hoverID);
       }
         
       AffineTransform pushed = g2.getTransform();
-      for (Team t : new Team[]{Team.A, Team.B})
+      for (Team t : nukeTeams)
       {
         g2.setTransform(pushed);
         int research = (int)(1.000001*getResearchProgress(t, Upgrade.NUKE.ordinal())*Upgrade.NUKE.numRounds);
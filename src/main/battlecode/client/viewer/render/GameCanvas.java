@@ -4,26 +4,112 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.Observable;
 import java.util.Observer;
 
+import javax.swing.AbstractAction;
+import javax.swing.InputMap;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+
 
 import battlecode.client.util.ImageFile;
 import battlecode.client.viewer.renderer3d.GLGameRenderer;
 
+/**
+ * The 2D view. Frames are drawn by the RenderThread into a back buffer,
+ * which is then swapped with the front buffer; paint only copies the front
+ * buffer to the screen, so the event-dispatch thread never waits on the
+ * renderer or the draw state.
+ */
 public final class GameCanvas extends BaseCanvas {
 
     private static final long serialVersionUID = 0; // don't serialize
     private volatile GameRenderer renderer = null;
     private Runnable spaceBarListener = null;
     private boolean gotPreferredSize = false;
+    // the front buffer is guarded by buffers, the back buffer belongs to
+    // the render thread
+    private final Object buffers = new Object();
+    private transient VolatileImage front, back;
+    // whether front holds a frame that hasn't been painted yet
+    private boolean frameReady = false;
+
+    private static final double ZOOM_STEP = 1.25;
 
     //private Window fullscreen;
     public GameCanvas() {
         super();
+        // the wheel zooms at the pointer, dragging with the middle button pans
+        MouseAdapter view = new MouseAdapter() {
+
+            private int lastX, lastY;
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (renderer != null) {
+                    renderer.zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getWheelRotation()));
+                    requestFrame();
+                }
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                lastX = e.getX();
+                lastY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (renderer != null && SwingUtilities.isMiddleMouseButton(e)) {
+                    renderer.pan(e.getX() - lastX, e.getY() - lastY);
+                    requestFrame();
+                }
+                lastX = e.getX();
+                lastY = e.getY();
+            }
+        };
+        addMouseListener(view);
+        addMouseMotionListener(view);
+        addMouseWheelListener(view);
+    }
+
+    @Override
+    protected void initKeyBindings() {
+        super.initKeyBindings();
+        InputMap im = getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        im.put(KeyStroke.getKeyStroke("EQUALS"), "zoom");
+        im.put(KeyStroke.getKeyStroke("shift EQUALS"), "zoom");
+        im.put(KeyStroke.getKeyStroke("MINUS"), "zoom");
+        im.put(KeyStroke.getKeyStroke("0"), "zoom");
+        getActionMap().put("zoom", new AbstractAction() {
+
+            private static final long serialVersionUID = 0; // don't serialize
+
+            public void actionPerformed(ActionEvent e) {
+                if (renderer == null) {
+                    return;
+                }
+                String ac = e.getActionCommand();
+                if ("-".equals(ac)) {
+                    renderer.zoomAt(-1, -1, 1 / ZOOM_STEP);
+                } else if ("0".equals(ac)) {
+                    renderer.resetView();
+                } else {
+                    renderer.zoomAt(-1, -1, ZOOM_STEP);
+                }
+                requestFrame();
+            }
+        });
     }
 
     public void setTournamentMode() {
@@ -119,10 +205,27 @@ public final class GameCanvas extends BaseCanvas {
     @Override
     public void paint(Graphics g) {
         if (renderer != null) {
-            renderer.setCanvasSize(getSize());
-            renderer.draw(g);
-            paintObservable.setChanged();
-            paintObservable.notifyObservers();
+            boolean painted = false, fresh;
+            synchronized (buffers) {
+                if (front != null && !front.contentsLost()) {
+                    painted = g.drawImage(front, 0, 0, null);
+                }
+                fresh = frameReady;
+                frameReady = false;
+            }
+            if (!painted) {
+                g.setColor(Color.BLACK);
+                Dimension d = getSize();
+                g.fillRect(0, 0, d.width, d.height);
+            }
+            if (fresh) {
+                paintObservable.setChanged();
+                paintObservable.notifyObservers();
+            } else {
+                // not asked for by the render thread, so something else
+                // changed and the frame is out of date
+                requestFrame();
+            }
         } else {
             g.setColor(Color.BLACK);
             Dimension d = getSize();
@@ -130,6 +233,49 @@ public final class GameCanvas extends BaseCanvas {
         }
     }
 
+    /**
+     * Asks the render thread for a new frame.
+     */
+    public void requestFrame() {
+        RenderThread.request(this);
+    }
+
+    /**
+     * Draws a frame into the back buffer and swaps it to the front. Only
+     * called by the render thread.
+     */
+    void renderFrame() {
+        GameRenderer r = renderer;
+        Dimension d = getSize();
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (r == null || gc == null || d.width <= 0 || d.height <= 0) {
+            return;
+        }
+        do {
+            if (back == null || back.getWidth() != d.width || back.getHeight() != d.height
+                || back.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (back != null) {
+                    back.flush();
+                }
+                back = gc.createCompatibleVolatileImage(d.width, d.height);
+            }
+            Graphics2D g2 = back.createGraphics();
+            try {
+                r.setCanvasSize(d);
+                r.draw(g2);
+            } finally {
+                g2.dispose();
+            }
+        } while (back.contentsLost());
+        synchronized (buffers) {
+            VolatileImage drawn = back;
+            back = front;
+            front = drawn;
+            frameReady = true;
+        }
+        repaint();
+    }
+
     public void forceRepaint() {
         if (!gotPreferredSize) {
             Dimension preferredSize = renderer.getPreferredSize();
@@ -139,6 +285,6 @@ public final class GameCanvas extends BaseCanvas {
                 setVisible(true);
             }
         }
-        repaint();
+        requestFrame();
     }
 }
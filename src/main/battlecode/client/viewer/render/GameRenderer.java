@@ -19,21 +19,40 @@ public class GameRenderer extends BaseRenderer {
   private DrawCutScene cutScene;
   private DrawHUD sideA, sideB;
   private DrawMap drawMap;
-  private DrawState ds;
+  // what the frames are drawn from, copied from the timeline's current
+  // state at the start of each frame through keyframe; the keyframes are
+  // swapped every frame, see DrawState.copyForDrawing
+  private DrawState frame, keyframe, lastKeyframe;
   private MapLocation origin;
   private int maxRounds = 0;
   private DebugState debugState;
   private final Color winnerMask = new Color(0, 0, 0, 0.6f);
   private Font debugFont;
+  private final Font overlayFont = new Font(null, Font.PLAIN, 12);
   private float spriteSize = RenderConfiguration.getInstance().getSpriteSize();
   private float unitWidth, unitHeight; // size of gc in sprite [grid] units
   private float unitHUDwidth;
   private float unitOffX, unitOffY;
   private Dimension canvasSize = null;
   private final Rectangle2D.Float clipRect = new Rectangle2D.Float();
+  // zoom and pan of the map: the map is drawn zoom times larger, with the
+  // point (viewX, viewY) of the map, in squares from its corner, at the
+  // top left of the map area
+  private static final float MIN_VIEW = 8;
+  private float zoom = 1;
+  private float viewX = 0, viewY = 0;
+  // the view as of the start of the frame being drawn, copied under the
+  // lock it is changed under, so that a frame never mixes two views
+  private float drawSpriteSize, drawOffX, drawOffY;
+  private float drawZoom, drawViewX, drawViewY;
+  private final Dimension drawCanvasSize = new Dimension();
+  private final Rectangle2D.Double mapView = new Rectangle2D.Double();
+  private final Rectangle2D.Double deviceView = new Rectangle2D.Double();
+  private final double[] viewPts = new double[4];
   private AffineTransform hudScale;
   private ImageFile teamA, teamB, winnerImage;
   private FramerateTracker fps = new FramerateTracker(30);
+  private final AllocationCounter allocations = new AllocationCounter();
   private int targetID = -1;
   static private boolean loadedPrefsAlready = false;
   private final MatchListener ml = new MatchListener() {
@@ -58,25 +77,33 @@ public class GameRenderer extends BaseRenderer {
   public GameRenderer(BufferedMatch match) {
     this.match = match;
     debugFont = new Font(null, Font.PLAIN, 2);
-    ds = new DrawState();
+    frame = new DrawState();
+    keyframe = new DrawState();
+    lastKeyframe = new DrawState();
     
     try {
       System.out.println(match.getTeamA() + " " +  match.getTeamB() + " " + Team.A + " " +  Team.B + " " + match.getHeader());
-      sideA = new DrawHUD(ds, Team.A,match);
-      sideB = new DrawHUD(ds, Team.B,match);
+      sideA = new DrawHUD(frame, Team.A,match);
+      sideB = new DrawHUD(frame, Team.B,match);
     } catch (Error e) {
       e.printStackTrace();
     }
 
     timeline = new GameStateTimeline<DrawState>(match, DrawState.FACTORY, 10);
-    timeline.setTargetState(ds);
+    timeline.setTargetState(new DrawState(), true);
     match.addMatchListener(ml);
     match.addMatchPausedListener(ml);
     loadPrefs();
   }
 
   public AbstractDrawState getDrawState() {
-    return ds;
+    return getCurrentState();
+  }
+
+  // the timeline swaps in states prepared by its seek worker, so its
+  // current state is looked up rather than kept
+  private DrawState getCurrentState() {
+    return timeline == null ? null : timeline.getCurrentState();
   }
 
   // wins obtained by each side
@@ -150,6 +177,8 @@ public class GameRenderer extends BaseRenderer {
     clipRect.width = drawMap.getMapWidth();
     clipRect.height = drawMap.getMapHeight();
     hudScale = AffineTransform.getScaleInstance(unitHeight, unitHeight);
+    zoom = 1;
+    viewX = viewY = 0;
 
     if (RenderConfiguration.getInstance().isTournamentMode()) {
       (new Thread() {
@@ -204,11 +233,73 @@ public class GameRenderer extends BaseRenderer {
     }
     unitOffX = 0.5f * (canvasSize.width / spriteSize - unitWidth);
     unitOffY = 0.5f * (canvasSize.height / spriteSize - unitHeight);
-    RenderConfiguration.getInstance().setSpriteSize(spriteSize);
+    // the map is what's drawn at the sprite size, so that sprites are
+    // scaled ahead of time to the size they are drawn at
+    RenderConfiguration.getInstance().setSpriteSize(spriteSize * zoom);
+  }
+
+  /**
+   * Zooms the map by factor, keeping the square under the given point of
+   * the canvas in place, or the middle of the view if the point isn't on
+   * the map.
+   */
+  public synchronized void zoomAt(int x, int y, double factor) {
+    if (drawMap == null || canvasSize == null) {
+      return;
+    }
+    float mapW = drawMap.getMapWidth(), mapH = drawMap.getMapHeight();
+    // at most zoomed in to MIN_VIEW squares across
+    float maxZoom = Math.max(1, Math.min(mapW, mapH) / MIN_VIEW);
+    float newZoom = (float) Math.max(1, Math.min(zoom * factor, maxZoom));
+    if (newZoom == zoom) {
+      return;
+    }
+    // the point in the map area, in squares before zooming
+    float ax = x / spriteSize - unitOffX - unitHUDwidth * 2;
+    float ay = y / spriteSize - unitOffY;
+    if (ax < 0 || ay < 0 || ax > mapW || ay > mapH) {
+      ax = mapW / 2;
+      ay = mapH / 2;
+    }
+    float mx = viewX + ax / zoom, my = viewY + ay / zoom;
+    zoom = newZoom;
+    viewX = mx - ax / zoom;
+    viewY = my - ay / zoom;
+    clampView();
+    setCanvasSize();
+  }
+
+  /**
+   * Moves the view of the map by the given number of canvas pixels.
+   */
+  public synchronized void pan(int dx, int dy) {
+    if (drawMap == null || canvasSize == null) {
+      return;
+    }
+    viewX -= dx / (spriteSize * zoom);
+    viewY -= dy / (spriteSize * zoom);
+    clampView();
+  }
+
+  /**
+   * Shows the whole map again.
+   */
+  public synchronized void resetView() {
+    zoom = 1;
+    viewX = viewY = 0;
+    if (drawMap != null && canvasSize != null) {
+      setCanvasSize();
+    }
+  }
+
+  private void clampView() {
+    float mapW = drawMap.getMapWidth(), mapH = drawMap.getMapHeight();
+    viewX = Math.max(0, Math.min(viewX, mapW - mapW / zoom));
+    viewY = Math.max(0, Math.min(viewY, mapH - mapH / zoom));
   }
 
   public AbstractDrawObject getRobotByID(int id) {
-    return ds.getDrawObject(id);
+    return getCurrentState().getDrawObject(id);
   }
 
   private void drawHUD(Graphics2D g2) {
@@ -248,19 +339,32 @@ public class GameRenderer extends BaseRenderer {
   }
 
   private void drawState(Graphics2D g2, boolean isGraphicsStable) {
-    if (drawMap == null || ds == null) {
+    if (drawMap == null || timeline == null) {
       return;
     } // just in case
     AffineTransform pushed = g2.getTransform();
     {
       g2.translate(unitHUDwidth * 2, 0);
-      drawMap.draw(g2, ds);
       g2.clip(clipRect);
+      if (isGraphicsStable) {
+        // the map area on the canvas, for culling
+        viewPts[0] = clipRect.getMinX();
+        viewPts[1] = clipRect.getMinY();
+        viewPts[2] = clipRect.getMaxX();
+        viewPts[3] = clipRect.getMaxY();
+        g2.getTransform().transform(viewPts, 0, viewPts, 0, 2);
+        deviceView.setFrameFromDiagonal(viewPts[0], viewPts[1], viewPts[2], viewPts[3]);
+      }
+      float z = drawZoom, vx = drawViewX, vy = drawViewY;
+      g2.scale(z, z);
+      g2.translate(-vx, -vy);
+      mapView.setRect(vx, vy, clipRect.width / z, clipRect.height / z);
+      drawMap.draw(g2, frame, mapView);
       g2.translate(-origin.x, -origin.y);
       if (isGraphicsStable) {
-        RenderConfiguration.getInstance().updateMapTransform(g2.getTransform());
+        RenderConfiguration.getInstance().updateMapTransform(g2.getTransform(), deviceView);
       }
-      ds.draw(g2, debugState);
+      frame.draw(g2, debugState);
       g2.setClip(null);
     }
     g2.setTransform(pushed);
@@ -269,8 +373,29 @@ public class GameRenderer extends BaseRenderer {
   public void draw(Graphics g) {
     // remove if anything breaks
 
-    if (canvasSize == null) {
-      return;
+    synchronized (this) {
+      if (canvasSize == null) {
+        return;
+      }
+      drawCanvasSize.setSize(canvasSize);
+      drawSpriteSize = spriteSize;
+      drawOffX = unitOffX;
+      drawOffY = unitOffY;
+      drawZoom = zoom;
+      drawViewX = viewX;
+      drawViewY = viewY;
+    }
+
+    boolean debugOverlay = RenderConfiguration.showDebugOverlay();
+    if (debugOverlay) {
+      allocations.beginFrame();
+    }
+    DrawState current = getCurrentState();
+    if (current != null) {
+      frame.copyForDrawing(current, keyframe, lastKeyframe);
+      DrawState swap = lastKeyframe;
+      lastKeyframe = keyframe;
+      keyframe = swap;
     }
 
     Graphics2D g2 = (Graphics2D) g;
@@ -281,10 +406,10 @@ public class GameRenderer extends BaseRenderer {
 
     boolean isGraphicsStable = g2.getTransform().isIdentity();
     g2.setColor(Color.BLACK);
-    g2.fill(new Rectangle(0, 0, canvasSize.width, canvasSize.height));
+    g2.fillRect(0, 0, drawCanvasSize.width, drawCanvasSize.height);
     AffineTransform pushed = g2.getTransform();
-    g2.scale(spriteSize, spriteSize);
-    g2.translate(unitOffX, unitOffY);
+    g2.scale(drawSpriteSize, drawSpriteSize);
+    g2.translate(drawOffX, drawOffY);
     if (timeline.getRound() >= 0) {
       drawHUD(g2);
       drawMap.redraw();
@@ -294,12 +419,17 @@ public class GameRenderer extends BaseRenderer {
     //g2.scale(spriteSize, spriteSize);
     //g2.translate(unitOffX, unitOffY);
     if (cutScene != null) {
-      g2.scale(spriteSize, spriteSize);
-      g2.translate(unitOffX, unitOffY);
+      g2.scale(drawSpriteSize, drawSpriteSize);
+      g2.translate(drawOffX, drawOffY);
       cutScene.draw(g2);
       g2.setTransform(pushed);
     }
-    //fps.updateFramerate(); renderFramerate();
+    if (debugOverlay) {
+      allocations.endFrame();
+      fps.updateFramerate();
+      renderDebugOverlay(g2);
+      g2.setTransform(pushed);
+    }
   }
 
   /* (non-Javadoc)
@@ -337,11 +467,17 @@ public class GameRenderer extends BaseRenderer {
     cutScene.fadeOut();
   }
 
-  private void renderFramerate(Graphics2D g2) {
-    g2.setTransform(new AffineTransform());
-    g2.setColor(Color.BLACK);
-    g2.setFont(debugFont);
-    g2.drawString("Framerate: " + fps.getFramerate(), 20, 30);
+  // drawn in the canvas's own coordinates, after the frame was counted
+  private void renderDebugOverlay(Graphics2D g2) {
+    g2.setColor(Color.WHITE);
+    g2.setFont(overlayFont);
+    g2.drawString(String.format("Framerate: %.1f", fps.getFramerate()), 20, 30);
+    if (allocations.isSupported()) {
+      g2.drawString(String.format("Allocated: %.1f KB/frame", allocations.getBytesPerFrame() / 1024), 20, 45);
+    }
+    if (drawMap != null) {
+      g2.drawString("Map prerenders: " + drawMap.getPrerenderCount(), 20, 60);
+    }
   }
 
   public static void preloadGraphics() {
@@ -25,6 +25,7 @@ public class RenderConfiguration {
   private static boolean teleportGhosts = true;
   private static boolean actionlines = false;
   private static boolean hats = true;
+  private static boolean debugOverlay = false;
   // the next two are related, only thresh cows if they are shown
   private static boolean cows = true;
   private static boolean threshCows = true;
@@ -39,9 +40,13 @@ public class RenderConfiguration {
   private AffineTransform spriteScale;
 
   private boolean resized = true;
+  private AffineTransform mapTransform = new AffineTransform();
   private AffineTransform mapInverse = new AffineTransform();
   private float[] srcPt = new float[2];
   private float[] dstPt = new float[2];
+  // the part of the map that is on the canvas, in map coordinates
+  private final Rectangle2D.Double visibleBounds = new Rectangle2D.Double(-1e6, -1e6, 2e6, 2e6);
+  private final double[] viewPts = new double[4];
 
   public static synchronized RenderConfiguration getInstance() {
     init();
@@ -74,6 +79,7 @@ public class RenderConfiguration {
   public static void toggleTeleportGhosts() { teleportGhosts = !teleportGhosts; }
   public static void toggleFlux() { flux = !flux; }
   public static void toggleShowHats() { hats = !hats; }
+  public static void toggleDebugOverlay() { debugOverlay = !debugOverlay; }
 
   public static void toggleDrawHeight() {
     if(!air && !ground) {
@@ -124,6 +130,7 @@ public class RenderConfiguration {
   public static boolean showTeleportGhosts() { return teleportGhosts; }
   public static boolean showFlux() { return flux; }
   public static boolean showHats() { return hats; }
+  public static boolean showDebugOverlay() { return debugOverlay; }
   public static boolean showGround() { return ground; }
   public static boolean showAir   () { return air;    }
   public static boolean showCows  () { return cows; }
@@ -141,6 +148,7 @@ public class RenderConfiguration {
     spriteSize = size;
     pixelSize = 1.0f/spriteSize;
     resized = true;
+    SpriteCache.setSpriteSize(size);
   }
 
   public float getPixelSize() {
@@ -160,13 +168,42 @@ public class RenderConfiguration {
   }
 
   public void updateMapTransform(AffineTransform trans) {
-    if (resized) {
+    updateMapTransform(trans, null);
+  }
+
+  /**
+   * Records the transform from map coordinates to the canvas, for
+   * getMapCoordinates, and the part of the canvas the map is drawn in,
+   * for getVisibleMapBounds.
+   * @param view the part of the canvas the map is drawn in, in canvas
+   * coordinates, or null if it isn't known
+   */
+  public void updateMapTransform(AffineTransform trans, Rectangle2D view) {
+    if (resized || !trans.equals(mapTransform)) {
       try {
         mapInverse = trans.createInverse();
+        mapTransform = new AffineTransform(trans);
         resized = false;
       }
       catch (NoninvertibleTransformException e) {}
     }
+    if (view != null) {
+      viewPts[0] = view.getMinX();
+      viewPts[1] = view.getMinY();
+      viewPts[2] = view.getMaxX();
+      viewPts[3] = view.getMaxY();
+      mapInverse.transform(viewPts, 0, viewPts, 0, 2);
+      visibleBounds.setFrameFromDiagonal(viewPts[0], viewPts[1], viewPts[2], viewPts[3]);
+    }
+  }
+
+  /**
+   * @return the part of the map that was on the canvas when the map
+   * transform was last updated, in map coordinates. The rectangle is
+   * shared and must not be modified.
+   */
+  public Rectangle2D getVisibleMapBounds() {
+    return visibleBounds;
   }
 
   public Point2D.Float getMapCoordinates(int x, int y, Point2D.Float dst) {
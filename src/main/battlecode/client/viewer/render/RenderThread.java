@@ -0,0 +1,87 @@
+package battlecode.client.viewer.render;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The thread that draws the frames of every GameCanvas.
+ *
+ * Canvases ask for a frame with request; requests for a canvas that hasn't
+ * been drawn yet are merged, so the thread draws as many frames as it can
+ * keep up with and no more. All 2D drawing happens on this one thread,
+ * which is what lets DrawObject and SpriteCache reuse their scratch
+ * objects.
+ */
+class RenderThread extends Thread {
+
+  private static RenderThread instance = null;
+
+  private final Set<GameCanvas> pending = new LinkedHashSet<GameCanvas>();
+  private final List<GameCanvas> drawing = new ArrayList<GameCanvas>();
+
+  private RenderThread() {
+    super("2D renderer");
+    setDaemon(true);
+  }
+
+  private static synchronized RenderThread getInstance() {
+    if (instance == null) {
+      instance = new RenderThread();
+      instance.start();
+    }
+    return instance;
+  }
+
+  /**
+   * Asks for a new frame of canvas to be drawn.
+   */
+  static void request(GameCanvas canvas) {
+    RenderThread t = getInstance();
+    synchronized (t.pending) {
+      if (t.pending.add(canvas)) {
+        t.pending.notify();
+      }
+    }
+  }
+
+  public void run() {
+    try {
+      drawFrames();
+    } finally {
+      // so that the next request starts a new thread
+      synchronized (RenderThread.class) {
+        if (instance == this) {
+          instance = null;
+        }
+      }
+    }
+  }
+
+  private void drawFrames() {
+    while (true) {
+      synchronized (pending) {
+        while (pending.isEmpty()) {
+          try {
+            pending.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        drawing.addAll(pending);
+        pending.clear();
+      }
+      for (int i = 0; i < drawing.size(); i++) {
+        try {
+          drawing.get(i).renderFrame();
+        } catch (Throwable t) {
+          // one bad frame, including a failed assertion, shouldn't stop
+          // the viewer
+          t.printStackTrace();
+        }
+      }
+      drawing.clear();
+    }
+  }
+}
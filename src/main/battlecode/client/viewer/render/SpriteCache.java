@@ -0,0 +1,164 @@
+package battlecode.client.viewer.render;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Display-compatible copies of the sprites, scaled ahead of time to the
+ * number of pixels they cover at the current sprite size.
+ *
+ * Drawing a full-size ImageFile through a scaling transform makes Java2D
+ * resample the image on every call, off the accelerated path. A sprite
+ * drawn through draw is scaled once, the first time it is drawn at a given
+ * size, and after that is blitted one to one. Each image keeps copies for
+ * the last MAX_SIZES sizes it was drawn at, so zooming back and forth
+ * reuses them and zooming through many sizes doesn't pile them up.
+ *
+ * Sprite sheets are cut into frames once, by frames, instead of calling
+ * getSubimage on every draw.
+ *
+ * Both caches hold their source images weakly, so the copies of an image
+ * go away with it once its ImageFile reloads. BufferedImage keeps the
+ * identity equals and hashCode of Object, so a WeakHashMap is keyed by
+ * identity here.
+ *
+ * Only to be used from the thread that draws the 2D view.
+ */
+class SpriteCache {
+
+  /** The scaled copies of a source image, most recently drawn size first. */
+  private static class Scaled {
+    final int width, height;
+    final BufferedImage image;
+    Scaled next;
+
+    Scaled(int width, int height, BufferedImage image) {
+      this.width = width;
+      this.height = height;
+      this.image = image;
+    }
+  }
+
+  /** The number of scaled copies kept per source image. */
+  private static final int MAX_SIZES = 3;
+
+  private static final Map<BufferedImage, Scaled> scaled = new WeakHashMap<BufferedImage, Scaled>();
+  private static final Map<BufferedImage, BufferedImage[]> sheets = new WeakHashMap<BufferedImage, BufferedImage[]>();
+  private static final AffineTransform trans = new AffineTransform();
+  private static GraphicsConfiguration gc;
+  private static float spriteSize = 0;
+
+  private SpriteCache() {
+  }
+
+  /**
+   * Sets the size sprites are scaled to from now on. The copies scaled to
+   * other sizes are kept until lookup pushes them out.
+   */
+  static synchronized void setSpriteSize(float size) {
+    spriteSize = size;
+  }
+
+  /**
+   * Cuts a horizontal sheet of square frames into its frames.
+   *
+   * @return the frames, in order; the array is shared and must not be
+   * modified
+   */
+  static synchronized BufferedImage[] frames(BufferedImage sheet) {
+    BufferedImage[] f = sheets.get(sheet);
+    if (f == null) {
+      int side = sheet.getHeight();
+      f = new BufferedImage[Math.max(1, sheet.getWidth() / side)];
+      for (int i = 0; i < f.length; i++) {
+        f[i] = sheet.getSubimage(i * side, 0, side, side);
+      }
+      sheets.put(sheet, f);
+    }
+    return f;
+  }
+
+  /**
+   * Draws image over the rectangle (x, y, width, height) in the user space
+   * of g2, like drawing it through a transform that scales it to that size.
+   *
+   * If g2 scales by the sprite size, which is the case for the map, the
+   * image is drawn one to one from a copy scaled ahead of time.
+   */
+  static synchronized void draw(Graphics2D g2, BufferedImage image,
+                                double x, double y, double width, double height) {
+    int pw = (int) Math.round(width * spriteSize);
+    int ph = (int) Math.round(height * spriteSize);
+    if (pw <= 0 || ph <= 0) {
+      // no sprite size yet, or too small to be worth a copy
+      trans.setTransform(width / image.getWidth(), 0, 0, height / image.getHeight(), x, y);
+      g2.drawImage(image, trans, null);
+      return;
+    }
+    BufferedImage s = lookup(image, pw, ph);
+    trans.setTransform(width / pw, 0, 0, height / ph, x, y);
+    g2.drawImage(s, trans, null);
+  }
+
+  private static BufferedImage lookup(BufferedImage image, int pw, int ph) {
+    Scaled first = scaled.get(image);
+    for (Scaled s = first, prev = null; s != null; prev = s, s = s.next) {
+      if (s.width == pw && s.height == ph) {
+        if (prev != null) {
+          prev.next = s.next;
+          s.next = first;
+          scaled.put(image, s);
+        }
+        return s.image;
+      }
+    }
+    Scaled s = new Scaled(pw, ph, scale(image, pw, ph));
+    s.next = first;
+    scaled.put(image, s);
+    // drop the least recently drawn copies beyond MAX_SIZES
+    Scaled last = s;
+    for (int i = 1; i < MAX_SIZES && last.next != null; i++) {
+      last = last.next;
+    }
+    for (Scaled old = last.next; old != null; old = old.next) {
+      old.image.flush();
+    }
+    last.next = null;
+    return s.image;
+  }
+
+  private static BufferedImage scale(BufferedImage image, int pw, int ph) {
+    BufferedImage dst;
+    GraphicsConfiguration config = getConfiguration();
+    if (config != null) {
+      dst = config.createCompatibleImage(pw, ph, Transparency.TRANSLUCENT);
+    } else {
+      dst = new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+    }
+    Graphics2D g2 = dst.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    g2.drawImage(image, 0, 0, pw, ph, null);
+    g2.dispose();
+    return dst;
+  }
+
+  private static GraphicsConfiguration getConfiguration() {
+    if (gc == null && !GraphicsEnvironment.isHeadless()) {
+      try {
+        gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+      } catch (HeadlessException e) {
+        // fall back to plain ARGB images
+      }
+    }
+    return gc;
+  }
+}
@@ -4,7 +4,6 @@ import java.awt.Color;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +23,7 @@ import battlecode.client.viewer.DebugState;
 import battlecode.client.viewer.FluxDepositState;
 import battlecode.client.viewer.GameState;
 import battlecode.client.viewer.GameStateFactory;
+import battlecode.client.viewer.RobotTable;
 import battlecode.client.viewer.MatchPlayer;
 import battlecode.client.viewer.render.RenderConfiguration;
 import battlecode.client.viewer.AbstractDrawObject.RobotInfo;
@@ -67,6 +67,10 @@ public class GLDrawState extends AbstractDrawState<GLDrawObject> {
             return new GLDrawState(state);
         }
 
+        public GLDrawState cloneKeyFrame(GLDrawState state, GLDrawState previousKeyFrame) {
+            return new GLDrawState(state);
+        }
+
         public void copyState(GLDrawState src, GLDrawState dst) {
             dst.copyStateFrom(src);
         }
@@ -123,8 +127,8 @@ public class GLDrawState extends AbstractDrawState<GLDrawObject> {
     public static TextureResource<String> textureCache = GLGameRenderer.textureCache; //new TextureResource<String>();
 
     public GLDrawState() {
-        groundUnits = new LinkedHashMap<Integer, GLDrawObject>();
-        airUnits = new LinkedHashMap<Integer, GLDrawObject>();
+        groundUnits = new RobotTable<GLDrawObject>();
+        airUnits = new RobotTable<GLDrawObject>();
         currentRound = -1;
     }
 
@@ -156,16 +160,25 @@ public class GLDrawState extends AbstractDrawState<GLDrawObject> {
 
     private synchronized void copyStateFrom(GLDrawState src) {
         groundUnits.clear();
-        for (Map.Entry<Integer, GLDrawObject> entry : src.groundUnits.entrySet()) {
-            GLDrawObject copy = new GLDrawObject(entry.getValue());
-            groundUnits.put(entry.getKey(), copy);
-//            tryAddArchon(copy);
+        groundUnits.ensureCapacity(src.groundUnits.size());
+        for (int i = 0, n = src.groundUnits.positions(); i < n; i++) {
+            GLDrawObject unit = src.groundUnits.valueAt(i);
+            if (unit != null) {
+                GLDrawObject copy = new GLDrawObject(unit);
+                groundUnits.put(src.groundUnits.idAt(i), copy);
+//                tryAddArchon(copy);
+            }
         }
         airUnits.clear();
-        for (Map.Entry<Integer, GLDrawObject> entry : src.airUnits.entrySet()) {
-            GLDrawObject copy = new GLDrawObject(entry.getValue());
-            airUnits.put(entry.getKey(), copy);            
+        airUnits.ensureCapacity(src.airUnits.size());
+        for (int i = 0, n = src.airUnits.positions(); i < n; i++) {
+            GLDrawObject unit = src.airUnits.valueAt(i);
+            if (unit != null) {
+                airUnits.put(src.airUnits.idAt(i), new GLDrawObject(unit));
+            }
         }
+        rebuildRobotGrid();
+        aggregates.copyFrom(src.aggregates);
 
         stats = src.stats;
 
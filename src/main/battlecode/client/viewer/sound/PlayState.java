@@ -21,6 +21,10 @@ public class PlayState extends GameState {
             return new PlayState(state);
         }
 
+        public PlayState cloneKeyFrame(PlayState state, PlayState previousKeyFrame) {
+            return new PlayState(state);
+        }
+
         public void copyState(PlayState src, PlayState dst) {
             dst.copyStateFrom(src);
         }